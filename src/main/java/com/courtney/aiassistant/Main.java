@@ -6,9 +6,15 @@ import javafx.application.Application;
 import javafx.stage.Stage;
 
 public class Main extends Application {
+    private final ClientAppController controller = new ClientAppController();
+
     @Override
     public void start(Stage primaryStage) {
-        new ClientAppController().start(primaryStage);
+        controller.start(primaryStage);
+    }
+    @Override
+    public void stop() {
+        controller.shutdown();
     }
     public static void main(String[] args) {
         launch(args);
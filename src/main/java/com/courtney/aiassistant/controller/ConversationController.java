@@ -4,34 +4,76 @@ import com.courtney.aiassistant.exception.ApiException;
 import com.courtney.aiassistant.model.AppSettings;
 import com.courtney.aiassistant.model.Conversation;
 import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.model.ResponseChain;
 import com.courtney.aiassistant.service.ApiService;
+import com.courtney.aiassistant.service.AutosaveService;
 import com.courtney.aiassistant.service.ConfigService;
-import com.courtney.aiassistant.service.ConversationRepository;
+import com.courtney.aiassistant.service.ContextWindow;
+import com.courtney.aiassistant.service.ConversationHandle;
+import com.courtney.aiassistant.service.ConversationStore;
 import javafx.application.Platform;
 import javafx.scene.web.WebEngine;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+// One chat session: a conversation and the reply streaming into it. Each tab has its own, so
+// sessions stream side by side over the shared ApiService.
 public class ConversationController {
 
+    private static final int PAGE_SIZE = 50;
+    // Aged-out messages collected before the summary is brought up to date
+    private static final int SUMMARY_BATCH = 4;
+    private static final int SUMMARY_MAX_TOKENS = 800;
+    // Longer messages are cut to this many characters in the summarizer's input
+    private static final int SUMMARY_MESSAGE_CHARS = 4000;
+    private static final String SUMMARY_INSTRUCTIONS = "You keep a running summary of a conversation between a user and an assistant. "
+            + "Update the current summary with the new messages. Keep facts, decisions, names, numbers, code identifiers "
+            + "and open questions; leave out pleasantries. Reply with the updated summary only.";
+
+    // Scripts for one page of turns, built off the FX thread
+    private record RenderedPage(int from, List<String> scripts) {}
+
     private final ApiService apiService;
-    private final ConversationRepository repository;
+    private final ConversationStore repository;
     private final ConfigService configService;
+    private final AutosaveService autosave;
+    // The I/O pool of AsyncConversationStore; handle pages are only ever read there
+    private final Executor io;
 
     private Conversation current = new Conversation();
+    // Set while the current conversation's messages are still on disk
+    private ConversationHandle handle;
+    private int renderedFrom = 0;
+    private boolean loadingOlder;
+    // Stops the reply being streamed, if any; set for the lifetime of one turn
+    private volatile Runnable stopStreaming;
+    private volatile boolean summarizing;
 
     public ConversationController(ApiService apiService,
-                                  ConversationRepository repository,
-                                  ConfigService configService) {
+                                  ConversationStore repository,
+                                  ConfigService configService,
+                                  AutosaveService autosave,
+                                  Executor io) {
         this.apiService = apiService;
         this.repository = repository;
         this.configService = configService;
+        this.autosave = autosave;
+        this.io = io;
         newConversation();
     }
 
     public void newConversation() {
+        handle = null;
         current = new Conversation();
         current.setId(UUID.randomUUID().toString());
         current.setCreatedAt(LocalDateTime.now());
@@ -40,66 +82,319 @@ public class ConversationController {
     }
 
     public void setCurrentConversation(Conversation conv) {
+        this.handle = null;
         this.current = conv;
     }
 
+    // Opens a stored conversation lazily; messages are paged in as they are rendered
+    public void openConversation(ConversationHandle h) {
+        this.handle = h;
+        this.current = h.header();
+    }
+
+    public String currentTitle() { return current.getTitle(); }
+    public String currentId() { return current.getId(); }
+    public boolean isStreaming() { return stopStreaming != null; }
+
     public String currentConversationSuggestedFileName() {
         String base = (current.getTitle() == null || current.getTitle().isBlank())
                 ? "conversation" : current.getTitle().trim().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
         return base + ".json";
     }
 
-    public void streamCompletion(String userText,
+    // Completes with the context window sent, so the caller can tell the user what was left out.
+    // refresh asks the server even when a cached reply to the same request exists. A lazily opened
+    // conversation is first read in full on the I/O pool; call on the FX thread.
+    public CompletableFuture<ContextWindow> streamCompletion(String userText,
+                                 boolean refresh,
                                  Consumer<Void> onStart,
                                  Consumer<String> onDelta,
-                                 Consumer<String> onComplete,
-                                 Consumer<Throwable> onError) throws ApiException {
+                                 Consumer<ApiService.Completion> onComplete,
+                                 Consumer<Throwable> onError) {
+        return ensureFullyLoaded().thenApply(v -> startTurn(userText, refresh, onStart, onDelta, onComplete, onError));
+    }
+
+    private ContextWindow startTurn(String userText,
+                                    boolean refresh,
+                                    Consumer<Void> onStart,
+                                    Consumer<String> onDelta,
+                                    Consumer<ApiService.Completion> onComplete,
+                                    Consumer<Throwable> onError) throws ApiException {
 
         AppSettings s = configService.getSettings();
+        Conversation conv = current;
+        boolean journal = s.isJournalEnabled();
 
         Message user = new Message("user", userText);
-        current.getMessages().add(user);
-        current.setUpdatedAt(LocalDateTime.now());
+        String summary;
+        int summarized;
+        int assistantIndex;
+        List<Message> history;
+        synchronized (conv) {
+            conv.getMessages().add(user);
+            conv.setUpdatedAt(LocalDateTime.now());
+            assistantIndex = conv.getMessages().size();
+            history = new ArrayList<>(conv.getMessages());
+            summary = conv.getContextSummary();
+            summarized = conv.getSummarizedCount();
+        }
+        if (journal) journal(() -> repository.appendMessage(conv, assistantIndex - 1, user));
 
         StringBuilder assistantText = new StringBuilder();
+        // Completion, failure and Stop race each other; whichever comes first ends the turn
+        AtomicBoolean settled = new AtomicBoolean(false);
 
-        apiService.streamChatCompletion(current, s, () -> onStart.accept(null),
+        int budget = s.contextBudgetFor(ApiService.modelFor(s));
+        ContextWindow full = ContextWindow.of(history, summary, summarized, s.getSystemPrompt(), budget);
+        ContextWindow context = continueChain(conv, s, history, full, assistantIndex - 1, budget);
+        String key = chainKey(s);
+        ApiService.StreamHandle stream = apiService.streamChatCompletion(context, s, refresh, () -> onStart.accept(null),
                 delta -> {
-                    assistantText.append(delta);
+                    synchronized (assistantText) {
+                        if (settled.get()) return;
+                        assistantText.append(delta);
+                    }
+                    if (journal) journal(() -> repository.appendDelta(conv, assistantIndex, delta));
                     onDelta.accept(delta);
                 },
-                finishReason -> {
-                    Message assistant = new Message("assistant", assistantText.toString());
-                    current.getMessages().add(assistant);
-                    if (current.getTitle() == null || current.getTitle().equals("New Conversation")) {
-                        current.setTitle(generateTitleFromMessages());
+                completion -> {
+                    if (!settled.compareAndSet(false, true)) return;
+                    stopStreaming = null;
+                    String text;
+                    synchronized (assistantText) {
+                        text = assistantText.toString();
                     }
-                    current.setUpdatedAt(LocalDateTime.now());
-                    onComplete.accept(assistantText.toString());
+                    // The next turn continues from this reply on the server
+                    conv.setResponseChain(completion.responseId() == null ? null : new ResponseChain(completion.responseId(),
+                            assistantIndex + 1, key, completion.context().tokens() + ContextWindow.estimateTokens(text)));
+                    addAssistant(conv, assistantIndex, text, false, s);
+                    onComplete.accept(completion);
+                    summarizeIfDue(conv, s);
                 },
+                err -> {
+                    String text;
+                    synchronized (assistantText) {
+                        if (!settled.compareAndSet(false, true)) return;
+                        text = assistantText.toString();
+                    }
+                    stopStreaming = null;
+                    conv.setResponseChain(null);
+                    // As with Stop, text that already arrived stays, marked incomplete, so the
+                    // conversation matches the page and what the journal would replay
+                    if (!text.isEmpty()) addAssistant(conv, assistantIndex, text, true, s);
+                    onError.accept(err);
+                });
+        stopStreaming = () -> {
+            String text;
+            synchronized (assistantText) {
+                if (!settled.compareAndSet(false, true)) return;
+                text = assistantText.toString();
+            }
+            stopStreaming = null;
+            stream.cancel();
+            // The server's copy of a cancelled reply is not what we keep
+            conv.setResponseChain(null);
+            if (!text.isEmpty()) addAssistant(conv, assistantIndex, text, true, s);
+        };
+        // The turn may already have ended while the request was being enqueued
+        if (settled.get()) stopStreaming = null;
+        return context;
+    }
+
+    // Only the new user message goes up when the previous reply is stored on the server, it covers
+    // everything before that message, and it was made with the same model and system prompt. A
+    // chain that has outgrown the context budget is dropped; the full window then starts a new one.
+    private static ContextWindow continueChain(Conversation conv, AppSettings s, List<Message> history, ContextWindow full,
+                                               int from, int budget) {
+        ResponseChain chain = conv.getResponseChain();
+        if (chain == null || chain.through() != from || !chain.settingsKey().equals(chainKey(s))) return full;
+        ContextWindow chained = ContextWindow.chained(chain.id(), chain.tokens(), history, from, full);
+        return budget > 0 && chained.tokens() > budget ? full : chained;
+    }
+
+    private static String chainKey(AppSettings s) {
+        return ApiService.modelFor(s) + "\n" + s.getSystemPrompt();
+    }
+
+    // Cancels the reply being streamed and frees its connection. Whatever arrived is kept as an
+    // incomplete message; returns false if nothing was streaming.
+    public boolean stopStreaming() {
+        Runnable stop = stopStreaming;
+        if (stop == null) return false;
+        stop.run();
+        return true;
+    }
+
+    // Runs on the network thread. The message list is shared with the FX thread, the autosave
+    // writer and the summarizer, so it is only changed or copied while holding the conversation.
+    private void addAssistant(Conversation conv, int index, String text, boolean incomplete, AppSettings s) {
+        Message assistant = new Message("assistant", text);
+        assistant.setIncomplete(incomplete);
+        synchronized (conv) {
+            conv.getMessages().add(assistant);
+            if (conv.getTitle() == null || conv.getTitle().equals("New Conversation")) {
+                conv.setTitle(generateTitleFromMessages(conv));
+            }
+            conv.setUpdatedAt(LocalDateTime.now());
+        }
+        if (s.isJournalEnabled()) journal(() -> repository.appendMessage(conv, index, assistant));
+        if (s.isAutosaveEnabled()) autosave.schedule(conv);
+    }
+
+    // Turns older than the latest summaryKeepTurns are folded into the conversation's rolling
+    // summary by the cheap summary model, a few at a time, after a reply has completed. Only the
+    // messages aged out since the last summary are sent, together with that summary, so each
+    // update costs the same however long the conversation gets.
+    private void summarizeIfDue(Conversation conv, AppSettings s) {
+        int keep = s.getSummaryKeepTurns();
+        if (keep <= 0 || summarizing) return;
+        List<Message> messages;
+        String previous;
+        int from;
+        synchronized (conv) {
+            messages = new ArrayList<>(conv.getMessages());
+            previous = conv.getContextSummary();
+            from = conv.getSummarizedCount();
+        }
+        int cut = -1;
+        int turns = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if ("user".equals(messages.get(i).getRole()) && ++turns == keep) {
+                cut = i;
+                break;
+            }
+        }
+        if (cut - from < SUMMARY_BATCH) return;
 
-                onError);
+        StringBuilder input = new StringBuilder("Current summary:\n")
+                .append(previous == null || previous.isBlank() ? "(none)" : previous)
+                .append("\n\nNew messages:\n");
+        for (Message m : messages.subList(from, cut)) {
+            String text = m.getContent() == null ? "" : m.getContent();
+            if (text.length() > SUMMARY_MESSAGE_CHARS) text = text.substring(0, SUMMARY_MESSAGE_CHARS) + " [...]";
+            input.append("user".equals(m.getRole()) ? "User: " : "Assistant: ").append(text).append("\n\n");
+        }
+
+        summarizing = true;
+        int through = cut;
+        apiService.complete(s.getSummaryModel(), SUMMARY_INSTRUCTIONS, input.toString(), SUMMARY_MAX_TOKENS)
+                .whenComplete((updated, err) -> {
+                    summarizing = false;
+                    if (err != null) {
+                        // The aged-out turns are still there; the next completed reply tries again
+                        System.err.println("Summary update failed: " + err.getMessage());
+                        return;
+                    }
+                    if (updated == null || updated.isBlank()) return;
+                    synchronized (conv) {
+                        if (conv.getSummarizedCount() != from) return;
+                        conv.setContextSummary(updated.trim());
+                        conv.setSummarizedCount(through);
+                    }
+                    if (s.isAutosaveEnabled()) autosave.schedule(conv);
+                });
     }
 
-    public void renderCurrentConversationTo(WebEngine engine) {
-        Platform.runLater(() -> {
-            engine.executeScript("clearMessages()");
-            for (Message m : current.getMessages()) {
+    // Journaling is best effort; a failing disk must not abort the response being streamed
+    private static void journal(Runnable append) {
+        try {
+            append.run();
+        } catch (RuntimeException e) {
+            System.err.println("Journal write failed: " + e.getMessage());
+        }
+    }
+
+    // Shows the latest page of turns; older ones are fetched by renderOlderTo as the user scrolls up.
+    // Pages, and any bodies kept in the blob store, are read on the I/O pool; only the finished
+    // scripts run on the FX thread. Call on the FX thread.
+    public CompletableFuture<Void> renderCurrentConversationTo(WebEngine engine) {
+        ConversationHandle h = handle;
+        List<Message> loaded = h == null ? copyMessages(current, Integer.MAX_VALUE) : null;
+        return CompletableFuture.supplyAsync(() -> {
+            int total = h != null ? h.size() : loaded.size();
+            int from = Math.max(0, total - PAGE_SIZE);
+            List<String> scripts = new ArrayList<>();
+            scripts.add("clearMessages()");
+            for (Message m : page(h, loaded, from, total)) {
                 String jsArg = toJsArg(m.getContent());
                 if ("user".equals(m.getRole())) {
-                    engine.executeScript("addUserMessage(" + jsArg + ")");
+                    scripts.add("addUserMessage(" + jsArg + ")");
                 } else {
-                    engine.executeScript("addAssistantMessage(" + jsArg + ")");
+                    scripts.add("addAssistantMessage(" + jsArg + ", " + m.isIncomplete() + ")");
                 }
             }
-        });
+            scripts.add("setHasOlder(" + (from > 0) + ")");
+            return new RenderedPage(from, scripts);
+        }, io).thenAcceptAsync(r -> {
+            renderedFrom = r.from();
+            for (String js : r.scripts()) engine.executeScript(js);
+        }, Platform::runLater);
+    }
+
+    public CompletableFuture<Void> renderOlderTo(WebEngine engine) {
+        if (renderedFrom == 0 || loadingOlder) return CompletableFuture.completedFuture(null);
+        loadingOlder = true;
+        int to = renderedFrom;
+        ConversationHandle h = handle;
+        List<Message> loaded = h == null ? copyMessages(current, to) : null;
+        return CompletableFuture.supplyAsync(() -> {
+            int from = Math.max(0, to - PAGE_SIZE);
+            List<String> scripts = new ArrayList<>();
+            scripts.add("beginPrepend()");
+            for (Message m : page(h, loaded, from, to)) {
+                String role = "user".equals(m.getRole()) ? "user" : "assistant";
+                scripts.add("prependMessage('" + role + "', " + toJsArg(m.getContent()) + ", " + m.isIncomplete() + ")");
+            }
+            scripts.add("endPrepend()");
+            scripts.add("setHasOlder(" + (from > 0) + ")");
+            return new RenderedPage(from, scripts);
+        }, io).whenCompleteAsync((r, err) -> {
+            loadingOlder = false;
+            if (r == null) return;
+            renderedFrom = r.from();
+            for (String js : r.scripts()) engine.executeScript(js);
+        }, Platform::runLater).thenAccept(r -> {});
+    }
+
+    private static List<Message> copyMessages(Conversation conv, int to) {
+        synchronized (conv) {
+            List<Message> messages = conv.getMessages();
+            return new ArrayList<>(messages.subList(0, Math.min(to, messages.size())));
+        }
+    }
+
+    private static List<Message> page(ConversationHandle h, List<Message> loaded, int from, int to) {
+        return h != null ? h.page(from, to) : loaded.subList(from, to);
+    }
+
+    // Continuing or saving a conversation needs its whole history in memory. It is read, bodies
+    // included, on the I/O pool and installed on the FX thread, which owns handle and current.
+    private CompletableFuture<Void> ensureFullyLoaded() {
+        ConversationHandle h = handle;
+        if (h == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(() -> {
+            List<Message> all = h.page(0, h.size());
+            for (Message m : all) m.getContent();
+            return all;
+        }, io).thenAcceptAsync(all -> {
+            if (handle != h) return;
+            synchronized (current) {
+                current.setMessages(all);
+            }
+            handle = null;
+        }, Platform::runLater);
     }
 
     public void saveHtml(byte[] htmlBytes, Path path) throws RuntimeException {
-        repository.saveHtml(htmlBytes, path);
+        try {
+            Files.write(path, htmlBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save HTML: " + e.getMessage(), e);
+        }
     }
 
-    public void saveConversation(Path path) {
+    // Call on the FX thread; the history is paged in off it first if needed
+    public CompletableFuture<Void> saveConversation(Path path) {
         String fullFileName = path.getFileName().toString();
         String fileNameWithoutExtension;
         int dotIndex = fullFileName.lastIndexOf('.');
@@ -108,13 +403,17 @@ public class ConversationController {
         } else {
             fileNameWithoutExtension = fullFileName; // No extension found
         }
-        current.setTitle(fileNameWithoutExtension);
-        repository.save(current, path);
+        return ensureFullyLoaded().thenCompose(v -> {
+            synchronized (current) {
+                current.setTitle(fileNameWithoutExtension);
+            }
+            return autosave.saveNow(current, path);
+        });
     }
 
-    private String generateTitleFromMessages() {
+    private String generateTitleFromMessages(Conversation conv) {
         StringBuilder sb = new StringBuilder();
-        for (Message m : current.getMessages()) {
+        for (Message m : conv.getMessages()) {
             if ("user".equals(m.getRole())) {
                 sb.append(m.getContent());
                 break;
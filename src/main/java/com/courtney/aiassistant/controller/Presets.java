@@ -15,8 +15,9 @@ public class Presets {
     {   configService = c; stage = s; }
 
     public void setProgrammerMode() {
-        AppSettings s = new AppSettings();
+        AppSettings s = configService.getSettings().copy();
         s.setMode("Programmer");
+        s.setResponseCacheEnabled(false);
         s.setModel("gpt-4o");
         s.setTemperature(0.1);
         s.setMaxTokens(4096);
@@ -28,8 +29,9 @@ public class Presets {
     }
 
     public void setMedicalMode() {
-        AppSettings s = new AppSettings();
+        AppSettings s = configService.getSettings().copy();
         s.setMode("Healthcare");
+        s.setResponseCacheEnabled(false);
         s.setModel("gpt-4o");
         s.setTemperature(0.1);
         s.setMaxTokens(1024);
@@ -41,8 +43,9 @@ public class Presets {
     }
 
     public void setDictionaryMode() {
-        AppSettings s = new AppSettings();
+        AppSettings s = configService.getSettings().copy();
         s.setMode("Deutsch");
+        s.setResponseCacheEnabled(true);
         s.setModel("gpt-4o-mini");
         s.setTemperature(0.4);
         s.setMaxTokens(1024);
@@ -54,8 +57,9 @@ public class Presets {
     }
 
     public void setAssistantMode() {
-        AppSettings s = new AppSettings();
+        AppSettings s = configService.getSettings().copy();
         s.setMode("Assistant");
+        s.setResponseCacheEnabled(false);
         s.setModel("gpt-4o-mini");
         s.setTemperature(0.7);
         s.setMaxTokens(1024);
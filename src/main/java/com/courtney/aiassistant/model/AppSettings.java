@@ -3,6 +3,9 @@ package com.courtney.aiassistant.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import javafx.beans.property.SimpleObjectProperty;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class AppSettings {
     private String mode = "Assistant";
@@ -10,6 +13,17 @@ public class AppSettings {
     private double temperature = 0.7;
     private int maxTokens = 1024;
     private String systemPrompt = "You are a helpful assistant.";
+    private boolean journalEnabled = true;
+    private boolean autosaveEnabled = true;
+    private String storageFormat = "json";
+    private String storageEngine = "files";
+    private int retentionDays = 0; // 0 keeps every conversation in the hot store
+    private int maxConcurrentStreams = 3; // replies streaming at once across tabs; others queue
+    private int contextTokenBudget = 16000; // input tokens sent per request; 0 sends the whole conversation
+    private Map<String, Integer> contextBudgets = new HashMap<>(); // per-model overrides of contextTokenBudget
+    private String summaryModel = "gpt-4o-mini"; // cheap model that keeps the rolling summaries
+    private int summaryKeepTurns = 6; // latest turns always sent as they are; 0 turns summaries off
+    private boolean responseCacheEnabled = false; // replay replies to identical requests; only the dictionary preset turns it on
 
     // Provide a shallow copy helper for the dialog
     public AppSettings copy() {
@@ -19,6 +33,17 @@ public class AppSettings {
         c.temperature = this.temperature;
         c.maxTokens = this.maxTokens;
         c.systemPrompt = this.systemPrompt;
+        c.journalEnabled = this.journalEnabled;
+        c.autosaveEnabled = this.autosaveEnabled;
+        c.storageFormat = this.storageFormat;
+        c.storageEngine = this.storageEngine;
+        c.retentionDays = this.retentionDays;
+        c.maxConcurrentStreams = this.maxConcurrentStreams;
+        c.contextTokenBudget = this.contextTokenBudget;
+        c.contextBudgets = new HashMap<>(this.contextBudgets);
+        c.summaryModel = this.summaryModel;
+        c.summaryKeepTurns = this.summaryKeepTurns;
+        c.responseCacheEnabled = this.responseCacheEnabled;
         return c;
     }
 
@@ -32,6 +57,36 @@ public class AppSettings {
     public void setMaxTokens(int maxTokens) { this.maxTokens = maxTokens; }
     public String getSystemPrompt() { return systemPrompt; }
     public void setSystemPrompt(String systemPrompt) { this.systemPrompt = systemPrompt; }
+    public boolean isJournalEnabled() { return journalEnabled; }
+    public void setJournalEnabled(boolean journalEnabled) { this.journalEnabled = journalEnabled; }
+    public boolean isAutosaveEnabled() { return autosaveEnabled; }
+    public void setAutosaveEnabled(boolean autosaveEnabled) { this.autosaveEnabled = autosaveEnabled; }
+    public String getStorageFormat() { return storageFormat; }
+    public void setStorageFormat(String storageFormat) { this.storageFormat = storageFormat; }
+    public String getStorageEngine() { return storageEngine; }
+    public void setStorageEngine(String storageEngine) { this.storageEngine = storageEngine; }
+    public int getRetentionDays() { return retentionDays; }
+    public void setRetentionDays(int retentionDays) { this.retentionDays = retentionDays; }
+    public int getMaxConcurrentStreams() { return maxConcurrentStreams; }
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) { this.maxConcurrentStreams = maxConcurrentStreams; }
+    public int getContextTokenBudget() { return contextTokenBudget; }
+    public void setContextTokenBudget(int contextTokenBudget) { this.contextTokenBudget = contextTokenBudget; }
+    public Map<String, Integer> getContextBudgets() { return contextBudgets; }
+    public void setContextBudgets(Map<String, Integer> contextBudgets) { this.contextBudgets = contextBudgets != null ? contextBudgets : new HashMap<>(); }
+
+    public String getSummaryModel() { return summaryModel; }
+    public void setSummaryModel(String summaryModel) { this.summaryModel = summaryModel; }
+    public int getSummaryKeepTurns() { return summaryKeepTurns; }
+    public void setSummaryKeepTurns(int summaryKeepTurns) { this.summaryKeepTurns = summaryKeepTurns; }
+
+    public boolean isResponseCacheEnabled() { return responseCacheEnabled; }
+    public void setResponseCacheEnabled(boolean responseCacheEnabled) { this.responseCacheEnabled = responseCacheEnabled; }
+
+    // The model's own budget if one is set, otherwise the general one
+    public int contextBudgetFor(String model) {
+        Integer budget = contextBudgets.get(model);
+        return budget != null ? budget : contextTokenBudget;
+    }
 
     // For two-way binding in UI (optional convenience)
     public static class Holder extends SimpleObjectProperty<AppSettings> {
@@ -1,5 +1,6 @@
 package com.courtney.aiassistant.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.LocalDateTime;
@@ -13,6 +14,12 @@ public class Conversation {
     private LocalDateTime createdAt = LocalDateTime.now();
     private LocalDateTime updatedAt = LocalDateTime.now();
     private List<Message> messages = new ArrayList<>();
+    private String contextSummary; // rolling summary sent in place of the first summarizedCount messages
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int summarizedCount;
+    // Server-side state for this session only; a reopened conversation starts a new chain
+    @JsonIgnore
+    private volatile ResponseChain responseChain;
 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -24,4 +31,10 @@ public class Conversation {
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
     public List<Message> getMessages() { return messages; }
     public void setMessages(List<Message> messages) { this.messages = messages; }
+    public String getContextSummary() { return contextSummary; }
+    public void setContextSummary(String contextSummary) { this.contextSummary = contextSummary; }
+    public int getSummarizedCount() { return summarizedCount; }
+    public void setSummarizedCount(int summarizedCount) { this.summarizedCount = summarizedCount; }
+    public ResponseChain getResponseChain() { return responseChain; }
+    public void setResponseChain(ResponseChain responseChain) { this.responseChain = responseChain; }
 }
@@ -0,0 +1,37 @@
+package com.courtney.aiassistant.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConversationSummary {
+    private String id;
+    private String title;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private int messageCount;
+    private String file;     // file name relative to the conversations directory
+    private long size;       // bytes on disk when indexed
+    private long modified;   // last-modified millis when indexed
+    private boolean archived; // lives in the compressed archive tier rather than the hot store
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public int getMessageCount() { return messageCount; }
+    public void setMessageCount(int messageCount) { this.messageCount = messageCount; }
+    public String getFile() { return file; }
+    public void setFile(String file) { this.file = file; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getModified() { return modified; }
+    public void setModified(long modified) { this.modified = modified; }
+    public boolean isArchived() { return archived; }
+    public void setArchived(boolean archived) { this.archived = archived; }
+}
@@ -1,14 +1,20 @@
 package com.courtney.aiassistant.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.LocalDateTime;
+import java.util.function.Function;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Message {
     private String role; // "user" | "assistant" | "system"
     private String content;
+    private String contentRef; // blob store hash when the body is kept outside the snapshot
     private LocalDateTime timestamp;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean incomplete; // the reply was stopped or cut off before it finished
+    private Function<String, String> contentLoader; // resolves contentRef on first getContent()
 
     public Message() {}
 
@@ -18,10 +24,33 @@ public class Message {
         this.timestamp = LocalDateTime.now();
     }
 
+    // Same message with its body replaced by a reference, as written to a snapshot
+    public Message withContentRef(String ref) {
+        Message m = new Message();
+        m.role = role;
+        m.timestamp = timestamp;
+        m.incomplete = incomplete;
+        m.contentRef = ref;
+        return m;
+    }
+
+    // Whether the body is in memory, without loading it
+    public boolean hasContent() { return content != null; }
+
     public String getRole() { return role; }
     public void setRole(String role) { this.role = role; }
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    public String getContent() {
+        if (content == null && contentRef != null && contentLoader != null) content = contentLoader.apply(contentRef);
+        return content;
+    }
+    // A new body invalidates the stored reference
+    public void setContent(String content) { this.content = content; this.contentRef = null; }
+    public String getContentRef() { return contentRef; }
+    public void setContentRef(String contentRef) { this.contentRef = contentRef; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    public boolean isIncomplete() { return incomplete; }
+    public void setIncomplete(boolean incomplete) { this.incomplete = incomplete; }
+    @JsonIgnore
+    public void setContentLoader(Function<String, String> contentLoader) { this.contentLoader = contentLoader; }
 }
@@ -0,0 +1,5 @@
+package com.courtney.aiassistant.model;
+
+// A conversation's latest reply as stored by the API. id covers messages[0, through) as they were
+// sent with the given settings; tokens estimates what the server holds for the chain.
+public record ResponseChain(String id, int through, String settingsKey, int tokens) {}
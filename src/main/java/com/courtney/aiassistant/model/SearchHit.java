@@ -0,0 +1,26 @@
+package com.courtney.aiassistant.model;
+
+import java.util.List;
+
+public class SearchHit {
+    private final ConversationSummary summary;
+    private final int messageIndex;
+    private final double score;
+    private final String snippet;
+    private final List<int[]> highlights; // [start, end) ranges within the snippet
+
+    public SearchHit(ConversationSummary summary, int messageIndex, double score,
+                     String snippet, List<int[]> highlights) {
+        this.summary = summary;
+        this.messageIndex = messageIndex;
+        this.score = score;
+        this.snippet = snippet;
+        this.highlights = highlights;
+    }
+
+    public ConversationSummary getSummary() { return summary; }
+    public int getMessageIndex() { return messageIndex; }
+    public double getScore() { return score; }
+    public String getSnippet() { return snippet; }
+    public List<int[]> getHighlights() { return highlights; }
+}
@@ -2,28 +2,48 @@ package com.courtney.aiassistant.service;
 
 import com.courtney.aiassistant.exception.ApiException;
 import com.courtney.aiassistant.model.AppSettings;
-import com.courtney.aiassistant.model.Conversation;
-import com.courtney.aiassistant.model.Message;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import okhttp3.sse.EventSource;
-import okhttp3.sse.EventSourceListener;
-import okhttp3.sse.EventSources;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ApiService {
     private static final String RESPONSES_URL = "https://api.openai.com/v1/responses";
     private static final String DEFAULT_MODEL = "gpt-4o-mini";
-    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    // Stream events we act on; the constants below are their positions for SseDecoder
+    private static final List<String> EVENT_TYPES = List.of(
+            "response.output_text.delta",
+            "response.output_tool_calls",
+            "response.completed",
+            "response.error");
+    private static final int OUTPUT_TEXT_DELTA = 0;
+    private static final int OUTPUT_TOOL_CALLS = 1;
+    private static final int COMPLETED = 2;
+    private static final int ERROR = 3;
+
+    // Attempts per reply, counting the first
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
 
     private final OkHttpClient client;
+    private final RateLimiter limiter = new RateLimiter();
+    private volatile ResponseCache cache;
 
     public ApiService() {
         this.client = new OkHttpClient.Builder()
@@ -33,6 +53,19 @@ public class ApiService {
                 .build();
     }
 
+    // Consulted by streamChatCompletion when the settings enable it
+    public void setResponseCache(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    // Replies streamed at once across all sessions; calls beyond the cap wait in the dispatcher's
+    // queue. Every call goes to the same host, so the per-host limit has to follow.
+    public void setMaxConcurrentStreams(int max) {
+        int n = Math.max(1, max);
+        client.dispatcher().setMaxRequests(n);
+        client.dispatcher().setMaxRequestsPerHost(n);
+    }
+
     public interface StreamCallbacks {
         void onStart();
         void onDelta(String token);
@@ -40,10 +73,51 @@ public class ApiService {
         void onError(Throwable t);
     }
 
-    public void streamChatCompletion(Conversation conv, AppSettings settings,
+    // Returned by streamChatCompletion. Cancelling closes the connection at once, or drops the
+    // request if it is still waiting for quota or a retry; no callback runs after it, so the
+    // caller decides what happens to the text received so far.
+    public static final class StreamHandle {
+        private volatile Call call;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        StreamHandle() {}
+
+        // Each attempt is a new call
+        void attach(Call call) {
+            this.call = call;
+            if (cancelled.get()) call.cancel();
+        }
+
+        public void cancel() {
+            if (!cancelled.compareAndSet(false, true)) return;
+            Call c = call;
+            if (c != null) c.cancel();
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    // The model a request with these settings goes to
+    public static String modelFor(AppSettings settings) {
+        return (settings != null && settings.getModel() != null && !settings.getModel().isBlank())
+                ? settings.getModel()
+                : DEFAULT_MODEL;
+    }
+
+    // How a streamed reply ended: the server's id for it (null if none was sent), the context
+    // that was actually sent (the fallback if the chain had expired), and whether it was replayed
+    // from the response cache
+    public record Completion(String responseId, ContextWindow context, boolean cached) {}
+
+    // Sends the messages of the context window, not the whole conversation. A reply cached for
+    // the same model, settings and input is replayed through the same callbacks instead; refresh
+    // skips the lookup and replaces the cached reply with the new one.
+    public StreamHandle streamChatCompletion(ContextWindow context, AppSettings settings, boolean refresh,
                                      Runnable onStart,
                                      java.util.function.Consumer<String> onDelta,
-                                     java.util.function.Consumer<String> onComplete,
+                                     java.util.function.Consumer<Completion> onComplete,
                                      java.util.function.Consumer<Throwable> onError) throws ApiException {
 
         String apiKey = System.getenv("OPENAI_API_KEY");
@@ -51,158 +125,276 @@ public class ApiService {
             throw new ApiException("OPENAI_API_KEY environment variable is not set.");
         }
 
-        // Build input (same as your previous messages, now under "input")
-        List<Map<String, String>> input = new ArrayList<>();
-        String sys = (settings != null) ? settings.getSystemPrompt() : null;
-        if (sys != null && !sys.isBlank()) {
-            input.add(Map.of("role", "system", "content", sys));
+        StreamHandle handle = new StreamHandle();
+        Exchange exchange = new Exchange(apiKey, settings, context, handle, onStart, onDelta, onComplete, onError);
+        ResponseCache c = cache;
+        if (c == null || settings == null || !settings.isResponseCacheEnabled()) {
+            exchange.submit();
+            return handle;
         }
-        if (conv != null && conv.getMessages() != null) {
-            for (Message m : conv.getMessages()) {
-                if (m == null || m.getRole() == null || m.getContent() == null) continue;
-                input.add(Map.of("role", m.getRole(), "content", m.getContent()));
-            }
+        // A chained request asks the same question as its full window, so both share one key
+        ContextWindow full = context.fallback() != null ? context.fallback() : context;
+        String key = ResponseCache.key(modelFor(settings), settings.getSystemPrompt(), settings.getTemperature(),
+                settings.getMaxTokens(), full.messages());
+        exchange.cacheAs(c, key, full);
+        if (refresh) {
+            exchange.submit();
+            return handle;
         }
+        // The disk tier may be read, so the lookup runs on the cache's thread
+        c.executor().execute(() -> {
+            ResponseCache.Entry hit = c.get(key);
+            if (handle.isCancelled()) return;
+            if (hit != null) {
+                exchange.replay(hit);
+            } else {
+                exchange.submit();
+            }
+        });
+        return handle;
+    }
 
-        Map<String, Object> payload = new LinkedHashMap<>();
-        String model = (settings != null && settings.getModel() != null && !settings.getModel().isBlank())
-                ? settings.getModel()
-                : DEFAULT_MODEL;
+    // One streamed reply, across however many attempts it takes. An attempt that fails before the
+    // first delta is retried after a jittered exponential backoff (or the server's Retry-After);
+    // once text has been shown the failure is the caller's to handle.
+    private final class Exchange implements Callback {
+        private final String apiKey;
+        private final AppSettings settings;
+        private final String model;
+        private volatile ContextWindow context;
+        private volatile Request request;
+        private volatile int tokens;
+        private final long ticket = limiter.nextTicket();
+        private final StreamHandle handle;
+        private final Runnable onStart;
+        private final java.util.function.Consumer<String> onDelta;
+        private final java.util.function.Consumer<Completion> onComplete;
+        private final java.util.function.Consumer<Throwable> onError;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private volatile boolean delivered; // a delta has reached the caller
+        private volatile boolean finished;  // set once the server has completed or failed the reply
+        private int attempt;
+        // Set when the reply is to be cached; reply collects its text
+        private ResponseCache cache;
+        private String cacheKey;
+        private ContextWindow cacheContext;
+        private final StringBuilder reply = new StringBuilder();
 
-        payload.put("model", model);
-        payload.put("input", input);
-        payload.put("stream", true);
-
-        // ✅ Enable web search and image generation tools
-        payload.put("tools", List.of(
-                Map.of("type", "web_search")
-        ));
-
-        // Map settings (primitives, so no null-checks)
-        if (settings != null) {
-            int max = settings.getMaxTokens();
-            if (max > 0) {
-                // Responses uses max_output_tokens (not max_tokens)
-                payload.put("max_output_tokens", max);
-            }
-            payload.put("temperature", settings.getTemperature());
+        Exchange(String apiKey, AppSettings settings, ContextWindow context, StreamHandle handle, Runnable onStart,
+                 java.util.function.Consumer<String> onDelta,
+                 java.util.function.Consumer<Completion> onComplete,
+                 java.util.function.Consumer<Throwable> onError) {
+            this.apiKey = apiKey;
+            this.settings = settings;
+            this.model = modelFor(settings);
+            this.handle = handle;
+            this.onStart = onStart;
+            this.onDelta = onDelta;
+            this.onComplete = onComplete;
+            this.onError = onError;
+            use(context);
         }
 
-        String json = JsonUtil.toJson(payload);
+        private void use(ContextWindow context) {
+            this.context = context;
+            // What the API counts against the token quota: the input plus the output allowance
+            this.tokens = context.tokens() + (settings != null ? Math.max(0, settings.getMaxTokens()) : 0);
+            this.request = new Request.Builder()
+                    .url(RESPONSES_URL)
+                    .header("Authorization", "Bearer " + apiKey)
+                    .header("Accept", "text/event-stream")
+                    .post(new ChatRequestBody(model, settings, context.messages(), context.previousResponseId()))
+                    .build();
+        }
 
-        Request request = new Request.Builder()
-                .url(RESPONSES_URL)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .header("Accept", "text/event-stream")
-                .post(RequestBody.create(json, JSON))
-                .build();
+        void submit() {
+            limiter.acquire(model, ticket, tokens, handle::isCancelled, this::send);
+        }
 
-        AtomicBoolean finished = new AtomicBoolean(false);  // set true when we’ve completed normally
+        void cacheAs(ResponseCache cache, String key, ContextWindow context) {
+            this.cache = cache;
+            this.cacheKey = key;
+            this.cacheContext = context;
+        }
 
-        EventSources.createFactory(client).newEventSource(request, new EventSourceListener() {
-            @Override
-            public void onOpen(EventSource eventSource, Response response) {
-                if (onStart != null) onStart.run();
-            }
+        // Delivers a cached reply at once, as a single delta
+        void replay(ResponseCache.Entry entry) {
+            if (onStart != null && started.compareAndSet(false, true)) onStart.run();
+            if (onDelta != null && !entry.text().isEmpty()) onDelta.accept(entry.text());
+            finished = true;
+            if (onComplete != null) onComplete.accept(new Completion(entry.responseId(), cacheContext, true));
+        }
 
-            @Override
-            public void onEvent(EventSource eventSource, String id, String type, String data) {
+        private void store(String responseId) {
+            if (cacheKey == null || handle.isCancelled()) return;
+            ResponseCache.Entry entry = new ResponseCache.Entry(reply.toString(), responseId, System.currentTimeMillis());
+            cache.executor().execute(() -> {
                 try {
-                    // Expect types:
-                    // - response.output_text.delta -> { "delta": "..." }
-                    // - response.completed         -> { ... }
-                    // - response.error             -> { "error": {...} }
-                    if (type == null || type.isBlank()) {
-                        // Some intermediates may omit the event name. Try best-effort delta extraction.
-                        Map<String, Object> root = JsonUtil.fromJson(data);
-                        Object deltaMaybe = root.get("delta");
-                        if (deltaMaybe != null && onDelta != null) onDelta.accept(String.valueOf(deltaMaybe));
+                    cache.put(cacheKey, entry);
+                } catch (RuntimeException ex) {
+                    System.err.println("Response cache write failed: " + ex.getMessage());
+                }
+            });
+        }
+
+        private void send() {
+            if (handle.isCancelled()) return;
+            Call call = client.newCall(request);
+            handle.attach(call);
+            call.enqueue(this);
+        }
+
+        // Back into the line at this request's original place once the delay has passed
+        private boolean retry(long retryAfter) {
+            if (handle.isCancelled() || delivered || ++attempt >= MAX_ATTEMPTS) return false;
+            long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+            long delay = Math.max(retryAfter, ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+            limiter.schedule(this::submit, delay);
+            return true;
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try (response) {
+                limiter.update(model, response);
+                if (!response.isSuccessful()) {
+                    String body = response.body() != null ? response.body().string() : null;
+                    if (handle.isCancelled()) return;
+                    // The server no longer has the chained response: send the whole window instead
+                    if (context.fallback() != null && isExpiredChain(response.code(), body)) {
+                        use(context.fallback());
+                        submit();
                         return;
                     }
-
+                    long retryAfter = RateLimiter.retryAfterMillis(response);
+                    if (response.code() == 429) limiter.pause(model, Math.max(retryAfter, BASE_BACKOFF_MILLIS));
+                    if (isRetryable(response.code(), body) && retry(retryAfter)) return;
+                    if (onError != null) {
+                        onError.accept(new IOException("SSE failure: HTTP " + response.code() + (body != null ? " | " + body : "")));
+                    }
+                    return;
+                }
+                if (handle.isCancelled()) return;
+                if (onStart != null && started.compareAndSet(false, true)) onStart.run();
+                // One decoder per stream: it owns the reusable data buffer
+                new SseDecoder(EVENT_TYPES).decode(response.body().source(), (type, data, length) -> {
+                    if (handle.isCancelled()) return false;
                     switch (type) {
-
-                        case "response.output_tool_calls": {
-                            // If the model explicitly calls tools, you can inspect them here.
-                            Map<String, Object> root = JsonUtil.fromJson(data);
-                            if (onDelta != null) onDelta.accept("[TOOL CALL] " + root.toString());
-                            break;
+                        // Some intermediates omit the event name; try best-effort delta extraction
+                        case SseDecoder.NO_TYPE, OUTPUT_TEXT_DELTA -> {
+                            String delta = JsonUtil.readStringField(data, length, "delta");
+                            if (delta != null && onDelta != null) {
+                                delivered = true;
+                                if (cacheKey != null) reply.append(delta);
+                                onDelta.accept(delta);
+                            }
                         }
-
-                        case "response.output_text.delta": {
-                            Map<String, Object> root = JsonUtil.fromJson(data);
-                            Object delta = root.get("delta");
-                            if (delta != null && onDelta != null) onDelta.accept(String.valueOf(delta));
-                            break;
+                        case OUTPUT_TOOL_CALLS -> {
+                            // If the model explicitly calls tools, you can inspect them here.
+                            delivered = true;
+                            String toolCall = "[TOOL CALL] " + JsonUtil.fromJson(data, length);
+                            if (cacheKey != null) reply.append(toolCall);
+                            if (onDelta != null) onDelta.accept(toolCall);
                         }
-                        case "response.completed": {
-                            finished.set(true);
-                            if (onComplete != null) onComplete.accept("stop");
-                            // We can either let the server close the stream naturally or cancel.
-                            // Cancel tends to trigger a benign "stream was reset" from OkHttp; we'll ignore it via 'finished'.
-                            eventSource.cancel();
-                            break;
+                        case COMPLETED -> {
+                            finished = true;
+                            String responseId = JsonUtil.readResponseId(data, length);
+                            store(responseId);
+                            if (onComplete != null) onComplete.accept(new Completion(responseId, context, false));
+                            return false;
                         }
-                        case "response.error": {
-                            // Forward the error
-                            if (onError != null) onError.accept(new RuntimeException("Stream error: " + data));
-                            eventSource.cancel();
-                            break;
+                        case ERROR -> {
+                            finished = true;
+                            if (onError != null) {
+                                onError.accept(new RuntimeException("Stream error: "
+                                        + new String(data, 0, length, StandardCharsets.UTF_8)));
+                            }
+                            return false;
                         }
-                        default:
+                        default -> {
                             // Ignore other events unless you use tools/reasoning
-                            break;
+                        }
                     }
-                } catch (Exception ex) {
-                    if (onError != null) onError.accept(ex);
-                    eventSource.cancel();
-                }
+                    return true;
+                });
+                // The body ended without response.completed: the connection was cut short
+                if (!finished && !handle.isCancelled()) interrupted(new IOException("Stream ended before the reply completed"));
+            } catch (Exception ex) {
+                // Resets and closes after the reply completed, or after Stop, are expected
+                if (handle.isCancelled() || finished) return;
+                if (ex instanceof IOException io) interrupted(io);
+                else if (onError != null) onError.accept(ex);
             }
+        }
 
-            @Override
-            public void onClosed(EventSource eventSource) {
-                // No-op
-            }
+        // A stream dropped before any text arrived can still be sent again; one cut off midway
+        // is reported, so the caller's turn always ends
+        private void interrupted(IOException e) {
+            if (retry(-1)) return;
+            if (onError != null) onError.accept(e);
+        }
 
-            @Override
-            public void onFailure(EventSource eventSource, Throwable t, Response response) {
-                // If we already finished normally, ignore benign close/reset errors.
-                if (finished.get() && isBenignClose(t, response)) {
-                    return;
-                }
-                // Also ignore common cancellation/close messages even if finished state got missed.
-                if (isBenignClose(t, response)) {
-                    return;
-                }
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (handle.isCancelled()) return;
+            if (retry(-1)) return;
+            if (onError != null) onError.accept(new IOException("SSE failure: " + e.getMessage(), e));
+        }
+    }
 
-                String body = null;
-                try {
-                    if (response != null && response.body() != null) {
-                        body = response.body().string();
-                    }
-                } catch (Exception ignore) { }
+    // One reply without streaming or tools, for background work such as summaries. It waits for
+    // quota like any request but is not retried: the caller can simply try again later.
+    public CompletableFuture<String> complete(String model, String instructions, String input, int maxOutputTokens) {
+        String apiKey = System.getenv("OPENAI_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            return CompletableFuture.failedFuture(new ApiException("OPENAI_API_KEY environment variable is not set."));
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("model", model);
+        payload.put("instructions", instructions);
+        payload.put("input", input);
+        payload.put("max_output_tokens", maxOutputTokens);
+        payload.put("store", false);
+        Request request = new Request.Builder()
+                .url(RESPONSES_URL)
+                .header("Authorization", "Bearer " + apiKey)
+                .post(RequestBody.create(JsonUtil.toJson(payload), JSON))
+                .build();
 
-                if (onError != null) {
-                    String msg = (t != null ? t.getMessage() : "unknown failure");
-                    onError.accept(new IOException("SSE failure: " + msg + (body != null ? " | " + body : ""), t));
+        CompletableFuture<String> result = new CompletableFuture<>();
+        int tokens = ContextWindow.estimateTokens(instructions) + ContextWindow.estimateTokens(input) + maxOutputTokens;
+        limiter.acquire(model, limiter.nextTicket(), tokens, () -> client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    limiter.update(model, response);
+                    String body = response.body() != null ? response.body().string() : "";
+                    if (!response.isSuccessful()) {
+                        if (response.code() == 429) limiter.pause(model, Math.max(RateLimiter.retryAfterMillis(response), BASE_BACKOFF_MILLIS));
+                        throw new IOException("HTTP " + response.code() + " | " + body);
+                    }
+                    result.complete(JsonUtil.outputText(body));
+                } catch (Exception ex) {
+                    result.completeExceptionally(ex);
                 }
             }
-        });
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return result;
     }
 
-    private boolean isBenignClose(Throwable t, Response response) {
-        // These are common when the server or we cancel/close a finished HTTP/2 stream.
-        String msg = (t != null && t.getMessage() != null) ? t.getMessage().toLowerCase() : "";
-        if (msg.contains("stream was reset") || msg.contains("rst_stream") || msg.contains("canceled")
-                || msg.contains("cancelled") || msg.contains("socket closed") || msg.contains("forcibly closed")) {
-            return true;
-        }
-        // If server responded 200 OK and then closed, treat as benign when there's no body detail.
-        if (response != null && response.code() == 200) {
-            return true;
-        }
-        return false;
+    private static boolean isExpiredChain(int code, String body) {
+        return (code == 400 || code == 404) && body != null && body.contains("previous_response");
+    }
+
+    // Rate limits, overload and gateway errors pass; a key out of quota will not recover by waiting
+    private static boolean isRetryable(int code, String body) {
+        if (code == 429) return body == null || !body.contains("insufficient_quota");
+        return code == 408 || code == 409 || code == 500 || code == 502 || code == 503 || code == 504;
     }
 
     // Minimal JSON util using Jackson
@@ -210,15 +402,53 @@ public class ApiService {
         private static final com.fasterxml.jackson.databind.ObjectMapper MAPPER =
                 new com.fasterxml.jackson.databind.ObjectMapper();
 
-        static String toJson(Object o) {
-            try { return MAPPER.writeValueAsString(o); }
+        static String toJson(Object value) {
+            try { return MAPPER.writeValueAsString(value); }
             catch (Exception e) { throw new RuntimeException(e); }
         }
 
+        // The text parts of a non-streamed response's message output, joined
+        static String outputText(String json) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (com.fasterxml.jackson.databind.JsonNode item : MAPPER.readTree(json).path("output")) {
+                if (!"message".equals(item.path("type").asText())) continue;
+                for (com.fasterxml.jackson.databind.JsonNode part : item.path("content")) {
+                    if ("output_text".equals(part.path("type").asText())) sb.append(part.path("text").asText());
+                }
+            }
+            return sb.toString();
+        }
+
         @SuppressWarnings("unchecked")
-        static Map<String, Object> fromJson(String json) {
-            try { return MAPPER.readValue(json, Map.class); }
+        static Map<String, Object> fromJson(byte[] json, int length) {
+            try { return MAPPER.readValue(json, 0, length, Map.class); }
             catch (Exception e) { throw new RuntimeException(e); }
         }
+
+        // The id in a response.* event's "response" object
+        static String readResponseId(byte[] json, int length) {
+            try {
+                com.fasterxml.jackson.databind.JsonNode id = MAPPER.readTree(json, 0, length).path("response").path("id");
+                return id.isTextual() ? id.asText() : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        // Reads one top-level string field without binding the rest of the object
+        static String readStringField(byte[] json, int length, String field) {
+            try (JsonParser p = MAPPER.getFactory().createParser(json, 0, length)) {
+                if (p.nextToken() != JsonToken.START_OBJECT) return null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    boolean wanted = field.equals(p.currentName());
+                    JsonToken value = p.nextToken();
+                    if (wanted) return value == JsonToken.VALUE_STRING ? p.getText() : null;
+                    p.skipChildren();
+                }
+                return null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
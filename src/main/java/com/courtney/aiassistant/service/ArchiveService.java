@@ -0,0 +1,122 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Whole-archive backup as gzip-compressed JSONL, one conversation per line. Both directions
+// stream through Jackson's generator and parser with a single conversation (or one import
+// batch) in memory at a time, so the archive size does not matter to the heap.
+public class ArchiveService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules();
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int IMPORT_BATCH = 100;
+
+    public record ImportResult(int imported, int skipped) {}
+
+    private final ConversationStore store;
+
+    public ArchiveService(ConversationStore store) {
+        this.store = store;
+    }
+
+    // Returns the number of conversations written; progress receives the running count
+    public int exportTo(Path target, IntConsumer progress) {
+        int written = 0;
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(file, BUFFER_BYTES), BUFFER_BYTES);
+             JsonGenerator gen = MAPPER.getFactory().createGenerator(gzip)) {
+            gen.setRootValueSeparator(null);
+            for (ConversationSummary s : store.listSummaries()) {
+                Conversation c;
+                try {
+                    c = store.load(s);
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping " + s.getFile() + " in export: " + e.getMessage());
+                    continue;
+                }
+                MAPPER.writeValue(gen, c);
+                gen.writeRaw('\n');
+                written++;
+                if (progress != null) progress.accept(written);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to export archive: " + e.getMessage(), e);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to export archive: " + e.getMessage(), e);
+        }
+        return written;
+    }
+
+    // Conversations already in the store are kept unless the archive holds a newer copy;
+    // duplicates inside the archive itself resolve the same way
+    public ImportResult importFrom(Path source, IntConsumer progress) {
+        Map<String, ConversationSummary> known = new HashMap<>();
+        for (ConversationSummary s : store.listSummaries()) {
+            if (s.getId() != null) known.put(s.getId(), s);
+        }
+        int imported = 0;
+        int skipped = 0;
+        List<Conversation> batch = new ArrayList<>(IMPORT_BATCH);
+        try (InputStream in = new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(source), BUFFER_BYTES), BUFFER_BYTES);
+             JsonParser parser = MAPPER.getFactory().createParser(in);
+             MappingIterator<Conversation> it = MAPPER.readerFor(Conversation.class).readValues(parser)) {
+            while (it.hasNextValue()) {
+                Conversation c = it.nextValue();
+                if (c.getId() == null) c.setId(UUID.randomUUID().toString());
+                ConversationSummary existing = known.get(c.getId());
+                if (existing != null && !isNewer(c, existing)) {
+                    skipped++;
+                    continue;
+                }
+                known.put(c.getId(), summaryOf(c));
+                batch.add(c);
+                if (batch.size() == IMPORT_BATCH) {
+                    store.saveBatch(batch);
+                    imported += batch.size();
+                    batch.clear();
+                    if (progress != null) progress.accept(imported);
+                }
+            }
+            if (!batch.isEmpty()) {
+                store.saveBatch(batch);
+                imported += batch.size();
+                if (progress != null) progress.accept(imported);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to import archive: " + e.getMessage(), e);
+        }
+        return new ImportResult(imported, skipped);
+    }
+
+    private static boolean isNewer(Conversation c, ConversationSummary existing) {
+        if (c.getUpdatedAt() == null || existing.getUpdatedAt() == null) return false;
+        return c.getUpdatedAt().isAfter(existing.getUpdatedAt());
+    }
+
+    private static ConversationSummary summaryOf(Conversation c) {
+        ConversationSummary s = new ConversationSummary();
+        s.setId(c.getId());
+        s.setUpdatedAt(c.getUpdatedAt());
+        return s;
+    }
+}
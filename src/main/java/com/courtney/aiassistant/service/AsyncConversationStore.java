@@ -0,0 +1,84 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.SearchHit;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// CompletableFuture view of a ConversationStore. Every call runs on a small pool of I/O threads,
+// so the FX thread only submits work and reacts to completions. Futures cancelled before their
+// task starts never touch the disk, which is what lets a superseded search be dropped cheaply.
+public class AsyncConversationStore {
+
+    private static final int IO_THREADS = 2;
+
+    private final ConversationStore store;
+    private final AtomicInteger threads = new AtomicInteger();
+    private final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS, r -> {
+        Thread t = new Thread(r, "conversation-io-" + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public AsyncConversationStore(ConversationStore store) {
+        this.store = store;
+    }
+
+    // For callers that are already off the FX thread
+    public ConversationStore store() {
+        return store;
+    }
+
+    public Executor executor() {
+        return io;
+    }
+
+    public CompletableFuture<List<ConversationSummary>> listSummaries(ConversationIndex.Listener listener) {
+        return supply(() -> store.listSummaries(listener));
+    }
+
+    // The delay lets keystrokes arriving in quick succession cancel this search before it runs
+    public CompletableFuture<List<SearchHit>> search(String query, int limit, long delayMillis) {
+        Executor delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, io);
+        return CompletableFuture.supplyAsync(() -> store.search(query, limit), delayed);
+    }
+
+    public CompletableFuture<Conversation> load(ConversationSummary summary) {
+        return supply(() -> store.load(summary));
+    }
+
+    public CompletableFuture<ConversationHandle> openHandle(ConversationSummary summary) {
+        return supply(() -> store.openHandle(summary));
+    }
+
+    public CompletableFuture<Void> save(Conversation conv, Path target) {
+        return run(() -> store.save(conv, target));
+    }
+
+    public CompletableFuture<Void> delete(ConversationSummary summary) {
+        return run(() -> store.delete(summary));
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, io);
+    }
+
+    public CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, io);
+    }
+
+    // Lets queued work finish; the store itself is closed by its owner
+    public void close() {
+        io.shutdown();
+        try {
+            io.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+// Write-behind persistence for conversations. Changes are copied on the caller's thread and
+// written by a single background writer; bursts for the same conversation within the delay
+// collapse into one write of the latest state.
+public class AutosaveService {
+
+    private static final long DELAY_MILLIS = 1500;
+
+    private final ConversationStore repository;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "autosave");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Conversation> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled;
+
+    public AutosaveService(ConversationStore repository) {
+        this.repository = repository;
+    }
+
+    public synchronized void schedule(Conversation conv) {
+        synchronized (conv) {
+            if (conv.getMessages() == null || conv.getMessages().isEmpty()) return;
+        }
+        Conversation copy = snapshot(conv);
+        pending.put(copy.getId(), copy);
+        if (scheduled == null || scheduled.isDone()) {
+            scheduled = writer.schedule(this::writePending, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Explicit saves go through the same writer so they are ordered with pending autosaves
+    public CompletableFuture<Void> saveNow(Conversation conv, Path target) {
+        Conversation copy = snapshot(conv);
+        synchronized (this) {
+            pending.remove(copy.getId());
+        }
+        return CompletableFuture.runAsync(() -> repository.save(copy, target), writer);
+    }
+
+    // Blocks until everything scheduled so far is on disk
+    public void flush() {
+        try {
+            writer.submit(this::writePending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Autosave failed: " + e.getCause().getMessage());
+        } catch (RejectedExecutionException ignore) {}
+    }
+
+    public void close() {
+        flush();
+        writer.shutdown();
+    }
+
+    private void writePending() {
+        List<Conversation> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Conversation c : batch) {
+            try {
+                repository.save(c, null);
+            } catch (RuntimeException e) {
+                System.err.println("Autosave failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Messages are never mutated once added, so copying the list is enough to decouple the write.
+    // Replies are added from the network thread while holding the conversation, so copy under it too.
+    private static Conversation snapshot(Conversation conv) {
+        Conversation c = new Conversation();
+        synchronized (conv) {
+            if (conv.getId() == null) conv.setId(UUID.randomUUID().toString());
+            c.setId(conv.getId());
+            c.setTitle(conv.getTitle());
+            c.setCreatedAt(conv.getCreatedAt());
+            c.setUpdatedAt(conv.getUpdatedAt());
+            c.setContextSummary(conv.getContextSummary());
+            c.setSummarizedCount(conv.getSummarizedCount());
+            c.setMessages(new ArrayList<>(conv.getMessages()));
+        }
+        return c;
+    }
+}
@@ -0,0 +1,142 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Large message bodies stored once under the SHA-256 of their text, gzip-compressed, in
+// <dir>/<first two hex digits>/<hash>.gz. Snapshots then carry only the hash, so the same
+// paste in many conversations is kept once and an unchanged body is never rewritten.
+public class BlobStore {
+
+    // Bodies up to this many characters stay inline in the snapshot
+    public static final int INLINE_LIMIT = 32 * 1024;
+
+    private final Path dir;
+    // References of live messages already stored, so a re-save neither rehashes their bodies nor
+    // has to mark the messages, which the FX thread and the autosave writer share
+    private final Map<Message, String> stored = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public BlobStore(Path dir) {
+        this.dir = dir;
+    }
+
+    // Returns the hash; a body already present is not written again
+    public String put(String content) {
+        String hash = hash(content);
+        Path target = pathOf(hash);
+        if (Files.exists(target)) return hash;
+        try {
+            Files.createDirectories(target.getParent());
+            DirectorySnapshotStore.writeAtomically(target, out -> {
+                try (OutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(content.getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store message body: " + e.getMessage(), e);
+        }
+        return hash;
+    }
+
+    public boolean contains(String hash) {
+        return isHash(hash) && Files.exists(pathOf(hash));
+    }
+
+    public String get(String hash) {
+        if (!isHash(hash)) throw new RuntimeException("Invalid message body reference: " + hash);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(pathOf(hash)))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Message body " + hash + " is missing from the blob store", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read message body: " + e.getMessage(), e);
+        }
+    }
+
+    // The copy that goes into a snapshot: large bodies become references. Messages that still hold
+    // a valid reference are passed through without touching (or loading) their body.
+    public Conversation externalize(Conversation conv) {
+        List<Message> messages = conv.getMessages();
+        if (messages == null) return conv;
+        List<Message> out = null;
+        for (int i = 0; i < messages.size(); i++) {
+            Message m = messages.get(i);
+            Message stored = externalize(m);
+            if (stored != m && out == null) out = new ArrayList<>(messages.subList(0, i));
+            if (out != null) out.add(stored);
+        }
+        if (out == null) return conv;
+        Conversation copy = new Conversation();
+        copy.setId(conv.getId());
+        copy.setTitle(conv.getTitle());
+        copy.setCreatedAt(conv.getCreatedAt());
+        copy.setUpdatedAt(conv.getUpdatedAt());
+        copy.setContextSummary(conv.getContextSummary());
+        copy.setSummarizedCount(conv.getSummarizedCount());
+        copy.setMessages(out);
+        return copy;
+    }
+
+    private Message externalize(Message m) {
+        String ref = m.getContentRef();
+        // An archive import can carry a reference whose blob lives on another machine
+        if (ref != null && contains(ref)) return m.withContentRef(ref);
+        ref = stored.get(m);
+        if (ref != null && contains(ref)) return m.withContentRef(ref);
+        if (!m.hasContent() || m.getContent().length() <= INLINE_LIMIT) return m;
+        ref = put(m.getContent());
+        stored.put(m, ref);
+        return m.withContentRef(ref);
+    }
+
+    // Lets messages read from a snapshot fetch their body on first use
+    public Conversation attach(Conversation conv) {
+        if (conv != null && conv.getMessages() != null) attach(conv.getMessages());
+        return conv;
+    }
+
+    public void attach(List<Message> messages) {
+        for (Message m : messages) attach(m);
+    }
+
+    public Message attach(Message m) {
+        if (m != null && m.getContentRef() != null) m.setContentLoader(this::get);
+        return m;
+    }
+
+    private Path pathOf(String hash) {
+        return dir.resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+    }
+
+    // References come from snapshot files, so they are checked before being turned into a path
+    private static boolean isHash(String s) {
+        return s != null && s.length() == 64 && s.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'));
+    }
+
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
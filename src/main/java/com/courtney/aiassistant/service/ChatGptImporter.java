@@ -0,0 +1,215 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.util.FileManager;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+// Converts the conversations.json from a ChatGPT data export. The file is one top-level array
+// walked with the streaming parser, so only the conversation being converted and the current
+// batch are held in memory. Each conversation keeps its ChatGPT id, which makes re-importing
+// idempotent, and a checkpoint of how many entries were committed lets an interrupted import
+// skip straight past them on the next run.
+public class ChatGptImporter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int IMPORT_BATCH = 50;
+
+    public record ImportResult(int imported, int skipped, int resumedAt) {}
+
+    // One node of a conversation's mapping tree, reduced to what the model keeps
+    private record Node(String parent, Message message) {}
+
+    private final ConversationStore store;
+    private final Path checkpointDir;
+
+    public ChatGptImporter(ConversationStore store) {
+        this.store = store;
+        this.checkpointDir = FileManager.appDir().resolve("imports");
+    }
+
+    // progress receives the number of export entries handled so far, including resumed ones
+    public ImportResult importFrom(Path source, IntConsumer progress) {
+        Path checkpoint = checkpointFor(source);
+        int resumedAt = readCheckpoint(checkpoint);
+        int position = 0;
+        int imported = 0;
+        int skipped = 0;
+        List<Conversation> batch = new ArrayList<>(IMPORT_BATCH);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source), BUFFER_BYTES);
+             JsonParser parser = MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Not a ChatGPT conversations.json export");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (position < resumedAt) {
+                    parser.skipChildren();
+                    position++;
+                    if (progress != null) progress.accept(position);
+                    continue;
+                }
+                Conversation c = readConversation(parser);
+                position++;
+                if (c == null || c.getMessages().isEmpty()) {
+                    skipped++;
+                } else {
+                    batch.add(c);
+                }
+                if (batch.size() == IMPORT_BATCH) imported += flush(batch, checkpoint, position);
+                if (progress != null) progress.accept(position);
+            }
+            imported += flush(batch, checkpoint, position);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to import ChatGPT export: " + e.getMessage(), e);
+        }
+        try {
+            Files.deleteIfExists(checkpoint);
+        } catch (IOException ignore) {}
+        return new ImportResult(imported, skipped, resumedAt);
+    }
+
+    // The checkpoint only moves once a batch is stored, so a crash repeats at most one batch
+    private int flush(List<Conversation> batch, Path checkpoint, int position) throws IOException {
+        int n = batch.size();
+        if (n > 0) store.saveBatch(batch);
+        batch.clear();
+        Files.createDirectories(checkpointDir);
+        Files.writeString(checkpoint, Integer.toString(position), StandardCharsets.UTF_8);
+        return n;
+    }
+
+    // Parser is on the conversation's START_OBJECT; leaves it on the matching END_OBJECT
+    private static Conversation readConversation(JsonParser parser) throws IOException {
+        String id = null;
+        String title = null;
+        String currentNode = null;
+        Double created = null;
+        Double updated = null;
+        Map<String, Node> nodes = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "conversation_id", "id" -> { if (id == null) id = parser.getValueAsString(); }
+                case "title" -> title = parser.getValueAsString();
+                case "current_node" -> currentNode = parser.getValueAsString();
+                case "create_time" -> created = value == JsonToken.VALUE_NULL ? null : parser.getValueAsDouble();
+                case "update_time" -> updated = value == JsonToken.VALUE_NULL ? null : parser.getValueAsDouble();
+                case "mapping" -> readMapping(parser, nodes);
+                default -> parser.skipChildren();
+            }
+        }
+        if (currentNode == null) return null;
+
+        // Edited prompts and regenerated answers fork the tree; the branch ending at current_node
+        // is the one the user last saw
+        LinkedList<Message> messages = new LinkedList<>();
+        Set<String> seen = new HashSet<>();
+        for (String at = currentNode; at != null && seen.add(at); ) {
+            Node node = nodes.get(at);
+            if (node == null) break;
+            if (node.message() != null) messages.addFirst(node.message());
+            at = node.parent();
+        }
+
+        Conversation c = new Conversation();
+        c.setId(id != null ? id : UUID.nameUUIDFromBytes((title + "|" + created).getBytes(StandardCharsets.UTF_8)).toString());
+        c.setTitle(title);
+        if (created != null) c.setCreatedAt(toDateTime(created));
+        c.setUpdatedAt(updated != null ? toDateTime(updated) : c.getCreatedAt());
+        c.setMessages(new ArrayList<>(messages));
+        return c;
+    }
+
+    private static void readMapping(JsonParser parser, Map<String, Node> nodes) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String parent = null;
+            Message message = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "parent" -> parent = parser.getValueAsString();
+                    // Single messages are small, so a tree is fine here
+                    case "message" -> message = toMessage(MAPPER.readTree(parser));
+                    default -> parser.skipChildren();
+                }
+            }
+            nodes.put(key, new Node(parent, message));
+        }
+    }
+
+    // Null for nodes the ChatGPT UI does not show: hidden system prompts, tool output, empty parts
+    private static Message toMessage(JsonNode m) {
+        if (m == null || m.isNull()) return null;
+        String role = m.path("author").path("role").asText("");
+        if (!role.equals("user") && !role.equals("assistant") && !role.equals("system")) return null;
+        if (m.path("metadata").path("is_visually_hidden_from_conversation").asBoolean(false)) return null;
+
+        JsonNode content = m.path("content");
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : content.path("parts")) {
+            // Multimodal parts mix strings with image pointers, which cannot be carried over
+            if (!part.isTextual() || part.asText().isEmpty()) continue;
+            if (!text.isEmpty()) text.append("\n\n");
+            text.append(part.asText());
+        }
+        if (text.isEmpty() && content.path("text").isTextual()) text.append(content.path("text").asText());
+        if (text.toString().isBlank()) return null;
+
+        Message msg = new Message();
+        msg.setRole(role);
+        msg.setContent(text.toString());
+        if (m.path("create_time").isNumber()) msg.setTimestamp(toDateTime(m.path("create_time").asDouble()));
+        return msg;
+    }
+
+    private static LocalDateTime toDateTime(double epochSeconds) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli((long) (epochSeconds * 1000)), ZoneId.systemDefault());
+    }
+
+    // Keyed by the export's name, size and timestamp so a different export never resumes from it
+    private Path checkpointFor(Path source) {
+        String key;
+        try {
+            key = source.getFileName() + "-" + Files.size(source) + "-" + Files.getLastModifiedTime(source).toMillis();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read ChatGPT export: " + e.getMessage(), e);
+        }
+        return checkpointDir.resolve(FileManager.safeFileName(key) + ".checkpoint");
+    }
+
+    private static int readCheckpoint(Path checkpoint) {
+        try {
+            if (!Files.exists(checkpoint)) return 0;
+            return Integer.parseInt(Files.readString(checkpoint, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+}
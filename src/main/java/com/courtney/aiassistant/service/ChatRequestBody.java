@@ -0,0 +1,90 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.AppSettings;
+import com.courtney.aiassistant.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.util.List;
+
+// The Responses API payload, generated straight into the connection while walking the history.
+// Nothing proportional to the conversation is built up front; OkHttp may call writeTo again on a
+// retry, which simply walks the same messages again. A request that continues a stored response
+// carries only the new messages; the system prompt is already part of the chain.
+class ChatRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final String model;
+    private final AppSettings settings;
+    private final List<Message> messages;
+    private final String previousResponseId;
+    // Messages appended after the request was built (the reply being streamed) are not part of it
+    private final int count;
+
+    ChatRequestBody(String model, AppSettings settings, List<Message> messages, String previousResponseId) {
+        this.model = model;
+        this.settings = settings;
+        this.previousResponseId = previousResponseId;
+        this.messages = messages == null ? List.of() : messages;
+        this.count = this.messages.size();
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try (JsonGenerator gen = FACTORY.createGenerator(sink.outputStream())) {
+            gen.writeStartObject();
+            gen.writeStringField("model", model);
+            if (previousResponseId != null) gen.writeStringField("previous_response_id", previousResponseId);
+
+            gen.writeArrayFieldStart("input");
+            String sys = (settings != null && previousResponseId == null) ? settings.getSystemPrompt() : null;
+            if (sys != null && !sys.isBlank()) writeMessage(gen, "system", sys);
+            for (int i = 0; i < count; i++) {
+                Message m = messages.get(i);
+                if (m == null || m.getRole() == null || m.getContent() == null) continue;
+                writeMessage(gen, m.getRole(), m.getContent());
+            }
+            gen.writeEndArray();
+
+            gen.writeBooleanField("stream", true);
+
+            // Enable web search
+            gen.writeArrayFieldStart("tools");
+            gen.writeStartObject();
+            gen.writeStringField("type", "web_search");
+            gen.writeEndObject();
+            gen.writeEndArray();
+
+            if (settings != null) {
+                int max = settings.getMaxTokens();
+                if (max > 0) {
+                    // Responses uses max_output_tokens (not max_tokens)
+                    gen.writeNumberField("max_output_tokens", max);
+                }
+                gen.writeNumberField("temperature", settings.getTemperature());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeMessage(JsonGenerator gen, String role, String content) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", role);
+        gen.writeStringField("content", content);
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,91 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The part of a conversation sent with the next request. Whole turns (a user message and the
+// replies that follow it) are taken from the newest backwards until the model's token budget is
+// spent; the system prompt and the latest turn are always sent, and older turns are dropped.
+// When the conversation has a rolling summary, it stands in for the messages it covers and
+// only the turns after them compete for the rest of the budget.
+// The same history, summary and budget always give the same window.
+// A window can instead continue a response stored on the server (previous_response_id), in which
+// case only the new messages are uploaded and the full window is kept as the fallback.
+public final class ContextWindow {
+
+    // Role and framing the API adds around each message
+    private static final int MESSAGE_OVERHEAD = 4;
+    private static final String SUMMARY_PREFIX = "Summary of the earlier part of this conversation:\n";
+
+    private final List<Message> messages;
+    private final int tokens;
+    private final int trimmedTokens;
+    private final int trimmedMessages;
+    private final String previousResponseId;
+    private final ContextWindow fallback;
+
+    private ContextWindow(List<Message> messages, int tokens, int trimmedTokens, int trimmedMessages,
+                          String previousResponseId, ContextWindow fallback) {
+        this.messages = messages;
+        this.tokens = tokens;
+        this.trimmedTokens = trimmedTokens;
+        this.trimmedMessages = trimmedMessages;
+        this.previousResponseId = previousResponseId;
+        this.fallback = fallback;
+    }
+
+    // summary replaces history[0, summarized); budget <= 0 sends everything after it
+    public static ContextWindow of(List<Message> history, String summary, int summarized, String systemPrompt, int budget) {
+        int used = (systemPrompt != null && !systemPrompt.isBlank()) ? estimateTokens(systemPrompt) + MESSAGE_OVERHEAD : 0;
+        int size = history.size();
+        int first = (summary != null && !summary.isBlank()) ? Math.min(Math.max(0, summarized), size) : 0;
+        Message summaryMessage = first > 0 ? new Message("system", SUMMARY_PREFIX + summary) : null;
+        if (summaryMessage != null) used += cost(summaryMessage);
+        int start = size;
+        int turn = 0;
+        for (int i = size - 1; i >= first; i--) {
+            turn += cost(history.get(i));
+            if (i > first && !"user".equals(history.get(i).getRole())) continue;
+            // history[i, start) is one complete turn
+            if (start < size && budget > 0 && used + turn > budget) break;
+            used += turn;
+            turn = 0;
+            start = i;
+        }
+        int trimmed = 0;
+        for (int i = first; i < start; i++) trimmed += cost(history.get(i));
+        List<Message> sent = new ArrayList<>(size - start + 1);
+        if (summaryMessage != null) sent.add(summaryMessage);
+        sent.addAll(history.subList(start, size));
+        return new ContextWindow(sent, used, trimmed, start - first, null, null);
+    }
+
+    // Continues the stored response: history[from, size) is sent after it. chainTokens is what the
+    // server already holds for the chain; fallback is sent instead if the server has dropped it.
+    public static ContextWindow chained(String previousResponseId, int chainTokens, List<Message> history, int from,
+                                        ContextWindow fallback) {
+        List<Message> sent = new ArrayList<>(history.subList(from, history.size()));
+        int used = chainTokens;
+        for (Message m : sent) used += cost(m);
+        return new ContextWindow(sent, used, 0, 0, previousResponseId, fallback);
+    }
+
+    // About four characters per token; close enough for English text and code
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    private static int cost(Message m) {
+        return m == null ? 0 : estimateTokens(m.getContent()) + MESSAGE_OVERHEAD;
+    }
+
+    public List<Message> messages() { return messages; }
+    // Estimated input tokens the model sees, system prompt and any chained response included
+    public int tokens() { return tokens; }
+    public int trimmedTokens() { return trimmedTokens; }
+    public int trimmedMessages() { return trimmedMessages; }
+    public String previousResponseId() { return previousResponseId; }
+    public ContextWindow fallback() { return fallback; }
+}
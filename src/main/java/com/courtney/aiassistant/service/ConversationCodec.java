@@ -0,0 +1,108 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// On-disk encoding of a conversation snapshot. The file extension identifies the codec, so
+// files in any supported format can sit side by side and are read transparently.
+public interface ConversationCodec {
+
+    ConversationCodec JSON = new JacksonCodec("json", ".json", new JsonFactory(), false);
+    ConversationCodec SMILE = new JacksonCodec("smile", ".smile", new SmileFactory(), false);
+    ConversationCodec SMILE_GZIP = new JacksonCodec("smile.gz", ".smile.gz", new SmileFactory(), true);
+
+    List<ConversationCodec> ALL = List.of(JSON, SMILE, SMILE_GZIP);
+
+    String name();
+
+    String extension();
+
+    ObjectMapper mapper();
+
+    // Whether byte offsets reported by its parser can be seeked to directly
+    boolean seekable();
+
+    void write(Conversation conv, OutputStream out) throws IOException;
+
+    Conversation read(InputStream in) throws IOException;
+
+    JsonParser createParser(InputStream in) throws IOException;
+
+    static ConversationCodec forName(String name) {
+        for (ConversationCodec c : ALL) {
+            if (c.name().equalsIgnoreCase(name)) return c;
+        }
+        return JSON;
+    }
+
+    // Longest matching extension wins, so ".smile.gz" is not mistaken for something else
+    static ConversationCodec forFile(Path file) {
+        return forFileName(file.getFileName().toString());
+    }
+
+    static ConversationCodec forFileName(String name) {
+        ConversationCodec best = null;
+        for (ConversationCodec c : ALL) {
+            if (name.endsWith(c.extension()) && (best == null || c.extension().length() > best.extension().length())) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    final class JacksonCodec implements ConversationCodec {
+        private final String name;
+        private final String extension;
+        private final ObjectMapper mapper;
+        private final boolean gzip;
+
+        JacksonCodec(String name, String extension, JsonFactory factory, boolean gzip) {
+            this.name = name;
+            this.extension = extension;
+            this.mapper = new ObjectMapper(factory).findAndRegisterModules();
+            this.gzip = gzip;
+        }
+
+        @Override public String name() { return name; }
+        @Override public String extension() { return extension; }
+        @Override public ObjectMapper mapper() { return mapper; }
+        @Override public boolean seekable() { return !gzip && !(mapper.getFactory() instanceof SmileFactory); }
+
+        @Override
+        public void write(Conversation conv, OutputStream out) throws IOException {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+            if (!gzip && "json".equals(name)) {
+                mapper.writerWithDefaultPrettyPrinter()
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValue(target, conv);
+            } else {
+                mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(target, conv);
+            }
+            if (target instanceof GZIPOutputStream z) z.finish();
+        }
+
+        @Override
+        public Conversation read(InputStream in) throws IOException {
+            return mapper.readValue(decode(in), Conversation.class);
+        }
+
+        @Override
+        public JsonParser createParser(InputStream in) throws IOException {
+            return mapper.getFactory().createParser(decode(in));
+        }
+
+        private InputStream decode(InputStream in) throws IOException {
+            return gzip ? new GZIPInputStream(in, 64 * 1024) : in;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.Message;
+
+import java.util.List;
+
+// An opened conversation whose messages are fetched a page at a time
+public interface ConversationHandle {
+
+    // Title, id and dates with an empty message list
+    Conversation header();
+
+    int size();
+
+    List<Message> page(int from, int to);
+}
@@ -0,0 +1,290 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.Message;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Persistent summary of every stored conversation, so listing never has to parse message bodies.
+public class ConversationIndex {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules();
+
+    // Every extension a ConversationCodec may produce
+    public static final String GLOB = "*.{json,smile,gz}";
+
+    // Parses in flight during a cold scan; virtual threads are cheap, open files are not
+    private static final int SCAN_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    // Receives each summary as it becomes available during refresh, cached ones first
+    public interface Listener {
+        void loaded(ConversationSummary summary);
+
+        void failed(String file, String reason);
+    }
+
+    // An entry that could not be parsed; it is retried once its size or mtime changes
+    public record Failure(String file, long size, long modified, String reason) {}
+
+    private record Result(ConversationSummary summary, Failure failure) {}
+
+    private final SnapshotStore store;
+    private final Path indexFile;
+
+    // Keyed by file name, which is <id> plus the codec extension once legacy files have been migrated
+    private final Map<String, ConversationSummary> entries = new HashMap<>();
+    private final Map<String, Failure> failures = new HashMap<>();
+    private boolean loaded = false;
+    private boolean scanned = false;
+    private boolean dirty = false;
+
+    public ConversationIndex(SnapshotStore store, Path indexFile) {
+        this.store = store;
+        this.indexFile = indexFile;
+    }
+
+    public synchronized List<ConversationSummary> list() {
+        load();
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized ConversationSummary get(String fileName) {
+        load();
+        return entries.get(fileName);
+    }
+
+    public synchronized void put(ConversationSummary summary) {
+        load();
+        entries.put(summary.getFile(), summary);
+        dirty = true;
+    }
+
+    public synchronized void remove(String fileName) {
+        load();
+        if (entries.remove(fileName) != null) dirty = true;
+        failures.remove(fileName);
+    }
+
+    // Whether a full refresh has run since startup
+    public synchronized boolean isScanned() {
+        return scanned;
+    }
+
+    public synchronized List<Failure> failures() {
+        return new ArrayList<>(failures.values());
+    }
+
+    public synchronized boolean refresh() {
+        return refresh(null);
+    }
+
+    // Bring the index in line with the store, re-reading only entries whose size or mtime changed.
+    // Changed entries are parsed in parallel and handed to the listener as each one completes.
+    // Returns true if anything was added, changed or removed.
+    public synchronized boolean refresh(Listener listener) {
+        load();
+        Set<String> seen = new HashSet<>();
+        List<SnapshotStore.Entry> changed = new ArrayList<>();
+        try {
+            for (SnapshotStore.Entry e : store.list()) {
+                String name = e.name();
+                seen.add(name);
+                ConversationSummary existing = entries.get(name);
+                if (existing != null && existing.getSize() == e.size() && existing.getModified() == e.modified()) {
+                    if (listener != null) listener.loaded(existing);
+                    continue;
+                }
+                Failure failed = failures.get(name);
+                if (failed != null && failed.size() == e.size() && failed.modified() == e.modified()) {
+                    if (listener != null) listener.failed(name, failed.reason());
+                    continue;
+                }
+                changed.add(e);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to index conversations: " + e.getMessage(), e);
+        }
+        if (entries.keySet().retainAll(seen)) dirty = true;
+        failures.keySet().retainAll(seen);
+        readAll(changed, listener);
+        scanned = true;
+        boolean res = dirty;
+        persist();
+        return res;
+    }
+
+    // Re-reads just the named entries, e.g. the ones a directory watcher saw change.
+    // Returns true if any summary was added, changed or removed.
+    public synchronized boolean refreshEntries(Collection<String> names) {
+        load();
+        boolean changed = false;
+        List<SnapshotStore.Entry> stale = new ArrayList<>();
+        try {
+            for (String name : names) {
+                SnapshotStore.Entry e = store.stat(name);
+                if (e == null) {
+                    failures.remove(name);
+                    if (entries.remove(name) != null) {
+                        dirty = true;
+                        changed = true;
+                    }
+                    continue;
+                }
+                ConversationSummary existing = entries.get(name);
+                if (existing != null && existing.getSize() == e.size() && existing.getModified() == e.modified()) {
+                    continue;
+                }
+                stale.add(e);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to index conversations: " + e.getMessage(), e);
+        }
+        if (readAll(stale, null)) changed = true;
+        persist();
+        return changed;
+    }
+
+    // Results are applied on the calling thread, which holds the lock, in completion order.
+    // Returns true if any summary was added, changed or removed.
+    private boolean readAll(List<SnapshotStore.Entry> changed, Listener listener) {
+        if (changed.isEmpty()) return false;
+        boolean res = false;
+        Semaphore permits = new Semaphore(SCAN_PARALLELISM);
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Result> done = new ExecutorCompletionService<>(pool);
+            for (SnapshotStore.Entry e : changed) {
+                done.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return new Result(readSummary(store, e), null);
+                    } catch (IOException | RuntimeException ex) {
+                        String reason = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+                        return new Result(null, new Failure(e.name(), e.size(), e.modified(), reason));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                Result r = done.take().get();
+                if (r.summary() != null) {
+                    entries.put(r.summary().getFile(), r.summary());
+                    failures.remove(r.summary().getFile());
+                    dirty = true;
+                    res = true;
+                    if (listener != null) listener.loaded(r.summary());
+                } else {
+                    Failure f = r.failure();
+                    failures.put(f.file(), f);
+                    if (entries.remove(f.file()) != null) {
+                        dirty = true;
+                        res = true;
+                    }
+                    if (listener != null) listener.failed(f.file(), f.reason());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to index conversations: " + e.getCause().getMessage(), e.getCause());
+        }
+        return res;
+    }
+
+    public synchronized void persist() {
+        if (!dirty) return;
+        try {
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), entries.values());
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save conversation index: " + e.getMessage(), e);
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(indexFile)) return;
+        try {
+            List<ConversationSummary> stored = MAPPER.readValue(indexFile.toFile(),
+                    new TypeReference<List<ConversationSummary>>() {});
+            for (ConversationSummary s : stored) {
+                if (s.getFile() != null) entries.put(s.getFile(), s);
+            }
+        } catch (IOException e) {
+            // A damaged index is only a cache; the next refresh rebuilds it from the files
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    public static ConversationSummary readSummary(SnapshotStore store, SnapshotStore.Entry entry) throws IOException {
+        ConversationSummary s = new ConversationSummary();
+        s.setFile(entry.name());
+        s.setSize(entry.size());
+        s.setModified(entry.modified());
+        try (JsonParser p = ConversationCodec.forFileName(entry.name()).createParser(store.open(entry.name(), 0))) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a conversation: " + entry.name());
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "id" -> s.setId(p.getValueAsString());
+                    case "title" -> s.setTitle(p.getValueAsString());
+                    case "createdAt" -> s.setCreatedAt(p.readValueAs(LocalDateTime.class));
+                    case "updatedAt" -> s.setUpdatedAt(p.readValueAs(LocalDateTime.class));
+                    case "messages" -> {
+                        int count = 0;
+                        if (value == JsonToken.START_ARRAY) {
+                            while (p.nextToken() != JsonToken.END_ARRAY) {
+                                p.skipChildren();
+                                count++;
+                            }
+                        }
+                        s.setMessageCount(count);
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+        }
+        return s;
+    }
+
+    // Reads a single message, skipping every other message without binding it
+    public static Message readMessage(SnapshotStore store, String name, int messageIndex) throws IOException {
+        try (JsonParser p = ConversationCodec.forFileName(name).createParser(store.open(name, 0))) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if (!"messages".equals(field) || value != JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                int i = 0;
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (i++ != messageIndex) {
+                        p.skipChildren();
+                        continue;
+                    }
+                    return p.readValueAs(Message.class);
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,257 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.util.FileManager;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Append-only JSONL log of turns per conversation, so a new message costs one line of I/O
+// instead of a rewrite of the whole history. Records carry the message index they apply to,
+// which makes replaying a journal over a snapshot that already contains them a no-op.
+public class ConversationJournal {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules();
+    private static final String SUFFIX = ".jsonl";
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Record {
+        public String type;          // "header" | "message" | "delta"
+        public Integer index;
+        public Message message;
+        public String text;
+        public String id;
+        public String title;
+        public LocalDateTime createdAt;
+        public LocalDateTime updatedAt;
+    }
+
+    private final Path journalDir;
+    private final Map<String, Writer> writers = new HashMap<>();
+    private final Map<String, String> headerTitles = new HashMap<>();
+    private final Set<String> streaming = new HashSet<>();
+
+    public ConversationJournal(Path journalDir) {
+        this.journalDir = journalDir;
+        try {
+            Files.createDirectories(journalDir);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create journal directory", e);
+        }
+    }
+
+    public synchronized void appendMessage(Conversation conv, int index, Message message) {
+        Record r = new Record();
+        r.type = "message";
+        r.index = index;
+        r.message = message;
+        append(conv, r);
+        streaming.remove(conv.getId());
+    }
+
+    public synchronized void appendDelta(Conversation conv, int index, String text) {
+        Record r = new Record();
+        r.type = "delta";
+        r.index = index;
+        r.text = text;
+        append(conv, r);
+        streaming.add(conv.getId());
+    }
+
+    // True while a response is being streamed into this journal by the running app
+    public synchronized boolean isStreaming(String id) {
+        return streaming.contains(id);
+    }
+
+    public synchronized boolean exists(String id) {
+        return id != null && Files.exists(fileFor(id));
+    }
+
+    public synchronized List<String> ids() {
+        List<String> res = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDir, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                res.add(name.substring(0, name.length() - SUFFIX.length()));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list journals: " + e.getMessage(), e);
+        }
+        return res;
+    }
+
+    public synchronized long size(String id) {
+        try {
+            return Files.size(fileFor(id));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public synchronized long lastModified(String id) {
+        try {
+            return Files.getLastModifiedTime(fileFor(id)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // What the journal adds on top of a snapshot holding baseCount messages
+    public record Tail(String title, LocalDateTime createdAt, LocalDateTime updatedAt, List<Message> messages) {}
+
+    // Applies the journal on top of the given snapshot (or an empty conversation if null)
+    public synchronized Conversation replay(String id, Conversation snapshot) {
+        Conversation conv = snapshot != null ? snapshot : new Conversation();
+        if (conv.getId() == null) conv.setId(id);
+        if (conv.getMessages() == null) conv.setMessages(new ArrayList<>());
+        Tail tail = tail(id, conv.getMessages().size());
+        if (tail.title() != null) conv.setTitle(tail.title());
+        if (tail.createdAt() != null && snapshot == null) conv.setCreatedAt(tail.createdAt());
+        if (tail.updatedAt() != null) conv.setUpdatedAt(tail.updatedAt());
+        conv.getMessages().addAll(tail.messages());
+        return conv;
+    }
+
+    public synchronized Tail tail(String id, int baseCount) {
+        String title = null;
+        LocalDateTime createdAt = null;
+        LocalDateTime updatedAt = null;
+        List<Message> messages = new ArrayList<>();
+        if (id == null) return new Tail(null, null, null, messages);
+        Path file = fileFor(id);
+        if (!Files.exists(file)) return new Tail(null, null, null, messages);
+
+        flushWriter(id);
+        int pendingIndex = -1;
+        StringBuilder pending = new StringBuilder();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Record r;
+                try {
+                    r = MAPPER.readValue(line, Record.class);
+                } catch (IOException torn) {
+                    break; // interrupted write at the tail; everything before it is intact
+                }
+                int next = baseCount + messages.size();
+                switch (r.type) {
+                    case "header" -> {
+                        if (r.title != null) title = r.title;
+                        if (r.createdAt != null) createdAt = r.createdAt;
+                        if (r.updatedAt != null) updatedAt = r.updatedAt;
+                    }
+                    case "message" -> {
+                        if (r.index != null && r.index == next && r.message != null) {
+                            messages.add(r.message);
+                            if (r.message.getTimestamp() != null) updatedAt = r.message.getTimestamp();
+                        }
+                        if (r.index != null && r.index == pendingIndex) {
+                            pendingIndex = -1;
+                            pending.setLength(0);
+                        }
+                    }
+                    case "delta" -> {
+                        if (r.index == null || r.index < next) continue;
+                        if (r.index != pendingIndex) {
+                            pendingIndex = r.index;
+                            pending.setLength(0);
+                        }
+                        if (r.text != null) pending.append(r.text);
+                    }
+                    default -> { }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read journal: " + e.getMessage(), e);
+        }
+        // A response that was still streaming when the app stopped; keep what arrived
+        if (pendingIndex == baseCount + messages.size() && !pending.isEmpty()) {
+            Message partial = new Message("assistant", pending.toString());
+            partial.setIncomplete(true);
+            messages.add(partial);
+        }
+        return new Tail(title, createdAt, updatedAt, messages);
+    }
+
+    // Drops the journal once a snapshot holding messageCount messages covers everything in it.
+    // Anything newer, such as a turn that is still streaming, keeps the journal alive.
+    public synchronized void discardCovered(String id, int messageCount) {
+        if (id == null || !Files.exists(fileFor(id))) return;
+        if (isStreaming(id)) return;
+        if (tail(id, messageCount).messages().isEmpty()) delete(id);
+    }
+
+    public synchronized void delete(String id) {
+        if (id == null) return;
+        closeWriter(id);
+        headerTitles.remove(id);
+        streaming.remove(id);
+        try {
+            Files.deleteIfExists(fileFor(id));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete journal: " + e.getMessage(), e);
+        }
+    }
+
+    public synchronized void close() {
+        for (String id : new ArrayList<>(writers.keySet())) closeWriter(id);
+    }
+
+    private void append(Conversation conv, Record r) {
+        String id = conv.getId();
+        try {
+            Writer w = writers.get(id);
+            if (w == null) {
+                w = Files.newBufferedWriter(fileFor(id), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                writers.put(id, w);
+            }
+            if (!headerTitles.containsKey(id) || !Objects.equals(headerTitles.get(id), conv.getTitle())) {
+                Record h = new Record();
+                h.type = "header";
+                h.id = id;
+                h.title = conv.getTitle();
+                h.createdAt = conv.getCreatedAt();
+                h.updatedAt = conv.getUpdatedAt();
+                w.write(MAPPER.writeValueAsString(h));
+                w.write('\n');
+                headerTitles.put(id, conv.getTitle());
+            }
+            w.write(MAPPER.writeValueAsString(r));
+            w.write('\n');
+            w.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to journal: " + e.getMessage(), e);
+        }
+    }
+
+    private void flushWriter(String id) {
+        Writer w = writers.get(id);
+        if (w == null) return;
+        try {
+            w.flush();
+        } catch (IOException ignore) {}
+    }
+
+    private void closeWriter(String id) {
+        Writer w = writers.remove(id);
+        if (w == null) return;
+        try {
+            w.close();
+        } catch (IOException ignore) {}
+    }
+
+    private Path fileFor(String id) {
+        return journalDir.resolve(FileManager.safeFileName(id) + SUFFIX);
+    }
+}
@@ -1,80 +1,631 @@
 package com.courtney.aiassistant.service;
 
 import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.model.SearchHit;
 import com.courtney.aiassistant.util.FileManager;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class ConversationRepository {
+public class ConversationRepository implements ConversationStore {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper()
-            .findAndRegisterModules();
+    private static final long COMPACT_INTERVAL_SECONDS = 30;
+    private static final long JOURNAL_IDLE_MILLIS = 30_000;
+    private static final long JOURNAL_MAX_BYTES = 256 * 1024;
+    private static final long RETENTION_SWEEP_MILLIS = 60 * 60 * 1000;
 
     private final Path conversationsDir = FileManager.appDir().resolve("conversations");
+    private final Path legacyDir = FileManager.appDir().resolve("conversations-legacy");
+    private final Path segmentsDir = FileManager.appDir().resolve("segments");
+    private final DirectorySnapshotStore files = new DirectorySnapshotStore(conversationsDir);
+    private final SnapshotStore store;
+    private final ConversationIndex index;
+    private final ConversationWatcher watcher;
+    // Cold tier: conversations idle for longer than the retention period, packed and compressed
+    private final SegmentStore archive = new SegmentStore(FileManager.appDir().resolve("archive"));
+    private final ConversationIndex archiveIndex =
+            new ConversationIndex(archive, FileManager.appDir().resolve("archive-index.json"));
+    private final Set<String> openedThisSession = ConcurrentHashMap.newKeySet();
+    private volatile int retentionDays = 0;
+    private long lastSweep = 0;
+    private final BlobStore blobs = new BlobStore(FileManager.appDir().resolve("blobs"));
+    private final SearchIndex searchIndex =
+            new SearchIndex(FileManager.appDir().resolve("search").resolve("messages.idx"));
+    private volatile boolean searchSynced = false;
+    private final ConversationJournal journal = new ConversationJournal(FileManager.appDir().resolve("journals"));
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile ConversationCodec codec;
 
-    public ConversationRepository() {
+    // engine is "files" for one file per conversation or "segments" for the packed segment store.
+    // Switching engines moves whatever the other one holds over on the next start.
+    public ConversationRepository(String engine, ConversationCodec codec) {
+        this.codec = codec;
         try {
             Files.createDirectories(conversationsDir);
         } catch (IOException e) {
             throw new RuntimeException("Failed to create conversations directory", e);
         }
+        migrateLegacyFiles();
+        if ("segments".equalsIgnoreCase(engine)) {
+            SegmentStore segments = new SegmentStore(segmentsDir);
+            moveAll(files, segments);
+            store = segments;
+        } else {
+            if (Files.isDirectory(segmentsDir)) {
+                SegmentStore segments = new SegmentStore(segmentsDir);
+                moveAll(segments, files);
+                try {
+                    segments.deleteAll();
+                } catch (IOException e) {
+                    System.err.println("Failed to remove segment files: " + e.getMessage());
+                }
+            }
+            store = files;
+        }
+        index = new ConversationIndex(store, FileManager.appDir().resolve("conversation-index.json"));
+        // Only the directory layout can be changed behind our back; segments are written here alone
+        if (store == files) {
+            watcher = new ConversationWatcher(conversationsDir, index);
+            watcher.addListener(() -> searchSynced = false);
+        } else {
+            watcher = null;
+        }
+        archiveIndex.refresh();
+        // The first pass also recovers journals left behind by a crash
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compactJournals(false);
+                store.maintain();
+                archive.maintain();
+                sweepIfDue();
+            } catch (RuntimeException e) {
+                System.err.println("Journal compaction failed: " + e.getMessage());
+            }
+        }, 0, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
+    // Format used for snapshots written from now on; existing files keep loading in their own format
+    public void setCodec(ConversationCodec codec) {
+        this.codec = codec;
+    }
+
+    // Conversations not updated for this many days move to the archive tier; 0 keeps everything hot
+    public void setRetentionDays(int days) {
+        this.retentionDays = Math.max(0, days);
+    }
+
+    // Inside the store a conversation always lives at <id> plus the codec extension, whatever name
+    // the caller proposed, so renaming overwrites in place. Targets outside the store are JSON exports.
+    @Override
     public void save(Conversation conv, Path target) {
+        if (conv.getId() == null) conv.setId(UUID.randomUUID().toString());
+        if (target != null && !isInConversationsDir(target)) {
+            try {
+                DirectorySnapshotStore.writeAtomically(target, out -> ConversationCodec.JSON.write(conv, out));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to save conversation: " + e.getMessage(), e);
+            }
+            return;
+        }
+        store(conv, codec, true);
+    }
+
+    // The summary index is rewritten once per batch rather than once per conversation
+    @Override
+    public void saveBatch(List<Conversation> batch) {
+        for (Conversation conv : batch) {
+            if (conv.getId() == null) conv.setId(UUID.randomUUID().toString());
+            store(conv, codec, false);
+        }
+        index.persist();
+    }
+
+    // Writers (autosave, conversion, archiving, compaction) all hold the journal's lock, so a
+    // conversation is never rewritten from an older copy while another thread saves it
+    private void store(Conversation conv, ConversationCodec with, boolean persistIndex) {
+        synchronized (journal) {
+            storeLocked(conv, with, persistIndex);
+        }
+    }
+
+    private void storeLocked(Conversation conv, ConversationCodec with, boolean persistIndex) {
         try {
-            if (target == null) {
-                String name = FileManager.safeFileName(conv.getTitle()) + "-" + conv.getCreatedAt().toLocalDate() + ".json";
-                target = conversationsDir.resolve(name);
+            Conversation stored = blobs.externalize(conv);
+            SnapshotStore.Entry written = store.write(nameFor(conv.getId(), with), out -> with.write(stored, out));
+            ConversationSummary summary = summaryOf(conv, written);
+            index.put(summary);
+            // Converting to another codec leaves the previous entry behind; drop it
+            for (ConversationCodec other : ConversationCodec.ALL) {
+                if (other != with) deleteEntry(nameFor(conv.getId(), other));
             }
-            MAPPER.writerWithDefaultPrettyPrinter().writeValue(target.toFile(), conv);
+            // Saving an archived conversation brings it back to the hot tier
+            removeArchived(nameFor(conv.getId(), ConversationCodec.SMILE_GZIP));
+            if (persistIndex) index.persist();
+            searchIndex.update(summary.getFile(), summary.getModified(), conv.getMessages());
+            journal.discardCovered(conv.getId(), conv.getMessages().size());
         } catch (IOException e) {
             throw new RuntimeException("Failed to save conversation: " + e.getMessage(), e);
         }
     }
 
-    public List<Conversation> listAll() {
-        List<Conversation> res = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(conversationsDir, "*.json")) {
-            for (Path p : stream) {
-                try {
-                    Conversation c = MAPPER.readValue(p.toFile(), Conversation.class);
-                    res.add(c);
-                } catch (IOException ignore) {}
+    // Rewrites every stored conversation that is not yet in the target format; returns how many.
+    // beforeEach runs ahead of each conversation outside the lock, e.g. to flush pending autosaves,
+    // and an entry that was rewritten meanwhile is re-read or skipped rather than converted stale.
+    public int convertAll(ConversationCodec target, Runnable beforeEach) {
+        int converted = 0;
+        for (ConversationSummary s : listSummaries()) {
+            if (s.isArchived() || ConversationCodec.forFileName(s.getFile()) == target) continue;
+            beforeEach.run();
+            synchronized (journal) {
+                ConversationSummary current = index.get(s.getFile());
+                if (current == null) continue;
+                Conversation conv = load(current);
+                if (conv.getId() == null) conv.setId(UUID.randomUUID().toString());
+                storeLocked(conv, target, true);
+                converted++;
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to list conversations: " + e.getMessage(), e);
         }
-        res.sort(Comparator.comparing(Conversation::getCreatedAt).reversed());
+        return converted;
+    }
+
+    // Streams summaries to the listener while the store is scanned, then returns them all sorted
+    @Override
+    public List<ConversationSummary> listSummaries(ConversationIndex.Listener listener) {
+        if (refreshIndex(listener)) searchSynced = false;
+        List<ConversationSummary> res = index.list();
+        // Archived summaries come from memory; only the hot tier is ever rescanned
+        for (ConversationSummary s : archivedSummaries()) {
+            res.add(s);
+            if (listener != null) listener.loaded(s);
+        }
+        res.sort(Comparator.comparing(ConversationSummary::getCreatedAt,
+                Comparator.nullsFirst(Comparator.naturalOrder())).reversed());
+        return res;
+    }
+
+    @Override
+    public List<ConversationSummary> listPage(int offset, int limit) {
+        List<ConversationSummary> all = listSummaries();
+        int from = Math.min(Math.max(0, offset), all.size());
+        return new ArrayList<>(all.subList(from, Math.min(all.size(), from + limit)));
+    }
+
+    @Override
+    public List<ConversationSummary> listUpdatedSince(LocalDateTime since) {
+        List<ConversationSummary> res = new ArrayList<>();
+        for (ConversationSummary s : listSummaries()) {
+            if (s.getUpdatedAt() != null && !s.getUpdatedAt().isBefore(since)) res.add(s);
+        }
+        res.sort(Comparator.comparing(ConversationSummary::getUpdatedAt).reversed());
         return res;
     }
 
+    @Override
+    public Conversation load(ConversationSummary summary) {
+        if (summary.isArchived()) return load(summary.getId());
+        if (summary.getId() != null && summary.getFile().startsWith(FileManager.safeFileName(summary.getId()) + ".")) {
+            return load(summary.getId());
+        }
+        // A file dropped into the directory since startup that is not yet in the id layout
+        try {
+            return read(summary.getFile());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open conversation: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Conversation load(String id) {
+        try {
+            String name = locate(id);
+            Conversation conv = name != null ? read(name) : readArchived(id);
+            if (journal.exists(id)) return journal.replay(id, conv);
+            if (conv == null) throw new NoSuchFileException(nameFor(id, codec));
+            return conv;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open conversation: " + e.getMessage(), e);
+        }
+    }
+
+    // Opens a conversation without reading its messages; see SnapshotHandle
+    @Override
+    public ConversationHandle openHandle(ConversationSummary summary) {
+        if (summary.getId() != null) openedThisSession.add(summary.getId());
+        String name = summary.isArchived() ? rehydrate(summary) : summary.getFile();
+        return new SnapshotHandle(store, name, journal, summary.getId(), blobs);
+    }
+
+    @Override
+    public void appendMessage(Conversation conv, int index, Message message) {
+        journal.appendMessage(conv, index, message);
+    }
+
+    @Override
+    public void appendDelta(Conversation conv, int index, String text) {
+        journal.appendDelta(conv, index, text);
+    }
+
+    // Folds journals into snapshots: idle or oversized ones, or all of them when forced
+    public void compactJournals(boolean force) {
+        long now = System.currentTimeMillis();
+        for (String id : journal.ids()) {
+            synchronized (journal) {
+                if (!journal.exists(id)) continue;
+                if (!force) {
+                    if (journal.isStreaming(id)) continue;
+                    boolean idle = now - journal.lastModified(id) > JOURNAL_IDLE_MILLIS;
+                    if (!idle && journal.size(id) < JOURNAL_MAX_BYTES) continue;
+                }
+                compact(id);
+            }
+        }
+    }
+
+    private void compact(String id) {
+        Conversation snapshot = null;
+        try {
+            String name = locate(id);
+            if (name != null) snapshot = read(name);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read snapshot for compaction: " + e.getMessage(), e);
+        }
+        Conversation merged = journal.replay(id, snapshot);
+        if (merged.getMessages().isEmpty()) {
+            journal.delete(id);
+            return;
+        }
+        save(merged, null);
+    }
+
+    @Override
+    public void close() {
+        if (watcher != null) watcher.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactJournals(true);
+        journal.close();
+        searchIndex.close();
+        store.close();
+        archiveIndex.persist();
+        archive.close();
+    }
+
+    @Override
+    public List<ConversationIndex.Failure> unreadable() {
+        return index.failures();
+    }
+
+    // Runs on the watcher thread
+    @Override
+    public void addChangeListener(Runnable listener) {
+        if (watcher != null) watcher.addListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Runnable listener) {
+        if (watcher != null) watcher.removeListener(listener);
+    }
+
+    // Once the first scan is done a watched index is kept current, so listing stays in memory
+    private boolean refreshIndex(ConversationIndex.Listener listener) {
+        if (watcher == null || !index.isScanned()) return index.refresh(listener);
+        if (listener != null) {
+            for (ConversationSummary s : index.list()) listener.loaded(s);
+            for (ConversationIndex.Failure f : index.failures()) listener.failed(f.file(), f.reason());
+        }
+        return false;
+    }
+
     public void delete(Conversation conv) {
-        // Attempt to find conversation by title/date pattern
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(conversationsDir, "*.json")) {
-            for (Path p : stream) {
+        delete(conv.getId());
+    }
+
+    @Override
+    public void delete(ConversationSummary summary) {
+        if (summary.isArchived()) {
+            removeArchived(summary.getFile());
+            searchIndex.remove(summary.getFile());
+        } else {
+            deleteFile(summary.getFile());
+        }
+        journal.delete(summary.getId());
+    }
+
+    @Override
+    public void delete(String id) {
+        if (id == null) return;
+        for (ConversationCodec c : ConversationCodec.ALL) {
+            deleteFile(nameFor(id, c));
+        }
+        removeArchived(nameFor(id, ConversationCodec.SMILE_GZIP));
+        journal.delete(id);
+    }
+
+    private void deleteFile(String fileName) {
+        deleteEntry(fileName);
+        index.persist();
+    }
+
+    private void deleteEntry(String fileName) {
+        try {
+            store.delete(fileName);
+            index.remove(fileName);
+            searchIndex.remove(fileName);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete conversation: " + e.getMessage(), e);
+        }
+    }
+
+    // Ranked full-text hits over message contents, best first
+    @Override
+    public List<SearchHit> search(String query, int limit) {
+        if (!searchSynced) syncSearchIndex();
+        Map<String, ConversationSummary> byFile = new HashMap<>();
+        for (ConversationSummary s : index.list()) byFile.put(s.getFile(), s);
+        for (ConversationSummary s : archivedSummaries()) byFile.put(s.getFile(), s);
+
+        List<SearchHit> hits = new ArrayList<>();
+        for (SearchIndex.Match m : searchIndex.search(query, limit)) {
+            ConversationSummary summary = byFile.get(m.file());
+            if (summary == null) continue;
+            String content;
+            try {
+                Message message = ConversationIndex.readMessage(summary.isArchived() ? archive : store,
+                        m.file(), m.messageIndex());
+                content = message == null ? null : blobs.attach(message).getContent();
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            hits.add(SearchIndex.snippet(summary, m.messageIndex(), m.score(), content, query));
+        }
+        return hits;
+    }
+
+    // Re-index files that changed outside this repository and drop the ones that disappeared
+    private synchronized void syncSearchIndex() {
+        refreshIndex(null);
+        Set<String> stale = searchIndex.indexedFiles();
+        List<ConversationSummary> all = index.list();
+        all.addAll(archivedSummaries());
+        for (ConversationSummary s : all) {
+            stale.remove(s.getFile());
+            if (searchIndex.modifiedOf(s.getFile()) == s.getModified()) continue;
+            try {
+                Conversation c = s.isArchived() ? read(archive, s.getFile()) : read(s.getFile());
+                searchIndex.replace(s.getFile(), s.getModified(),
+                        c.getMessages() == null ? List.of() : c.getMessages());
+            } catch (IOException ignore) {}
+        }
+        for (String file : stale) searchIndex.remove(file);
+        searchSynced = true;
+    }
+
+    private List<ConversationSummary> archivedSummaries() {
+        List<ConversationSummary> res = archiveIndex.list();
+        for (ConversationSummary s : res) s.setArchived(true);
+        return res;
+    }
+
+    private void sweepIfDue() {
+        int days = retentionDays;
+        long now = System.currentTimeMillis();
+        if (days <= 0 || now - lastSweep < RETENTION_SWEEP_MILLIS) return;
+        lastSweep = now;
+        archiveIdle(LocalDateTime.now().minusDays(days));
+    }
+
+    // Moves conversations last updated before the cutoff into the archive tier. Anything opened
+    // this session or with an unfolded journal is still in use and stays hot.
+    private int archiveIdle(LocalDateTime cutoff) {
+        int moved = 0;
+        refreshIndex(null);
+        for (ConversationSummary s : index.list()) {
+            String id = s.getId();
+            if (id == null || s.getUpdatedAt() == null || !s.getUpdatedAt().isBefore(cutoff)) continue;
+            if (!s.getFile().startsWith(FileManager.safeFileName(id) + ".")) continue;
+            synchronized (journal) {
+                if (openedThisSession.contains(id) || journal.exists(id)) continue;
                 try {
-                    Conversation c = MAPPER.readValue(p.toFile(), Conversation.class);
-                    if (c.getId() != null && c.getId().equals(conv.getId())) {
-                        Files.deleteIfExists(p);
-                        return;
-                    }
-                } catch (IOException ignore) {}
+                    Conversation conv = read(s.getFile());
+                    String name = nameFor(id, ConversationCodec.SMILE_GZIP);
+                    Conversation stored = blobs.externalize(conv);
+                    SnapshotStore.Entry written = archive.write(name, out -> ConversationCodec.SMILE_GZIP.write(stored, out));
+                    archiveIndex.put(summaryOf(conv, written));
+                    // Both tiers may use the same name, so the hot entry goes before the archive one is indexed
+                    deleteEntry(s.getFile());
+                    searchIndex.update(name, written.modified(), conv.getMessages());
+                    moved++;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Failed to archive " + s.getFile() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (moved > 0) {
+            index.persist();
+            archiveIndex.persist();
+        }
+        return moved;
+    }
+
+    // Brings an archived conversation back into the hot store and returns its name there
+    private String rehydrate(ConversationSummary summary) {
+        synchronized (journal) {
+            Conversation conv = load(summary.getId());
+            store(conv, codec, true);
+            return nameFor(conv.getId(), codec);
+        }
+    }
+
+    private Conversation readArchived(String id) throws IOException {
+        String name = nameFor(id, ConversationCodec.SMILE_GZIP);
+        return archive.stat(name) != null ? read(archive, name) : null;
+    }
+
+    // Search entries are left alone since the hot tier may hold the same name. Most saves are of
+    // conversations that were never archived; those leave the archive and its index untouched.
+    private void removeArchived(String name) {
+        try {
+            if (!archive.delete(name)) return;
+            archiveIndex.remove(name);
+            archiveIndex.persist();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete archived conversation: " + e.getMessage(), e);
+        }
+    }
+
+    private Conversation read(String name) throws IOException {
+        return read(store, name);
+    }
+
+    // Large bodies stay in the blob store until a message is actually rendered
+    private Conversation read(SnapshotStore from, String name) throws IOException {
+        try (InputStream in = from.open(name, 0)) {
+            return blobs.attach(ConversationCodec.forFileName(name).read(in));
+        }
+    }
+
+    private boolean isInConversationsDir(Path target) {
+        Path parent = target.toAbsolutePath().normalize().getParent();
+        return parent != null && parent.equals(conversationsDir.toAbsolutePath().normalize());
+    }
+
+    private static String nameFor(String id, ConversationCodec with) {
+        return FileManager.safeFileName(id) + with.extension();
+    }
+
+    // The stored snapshot for an id in whichever format it was written, or null
+    private String locate(String id) throws IOException {
+        for (ConversationCodec c : ConversationCodec.ALL) {
+            String name = nameFor(id, c);
+            if (store.stat(name) != null) return name;
+        }
+        return null;
+    }
+
+    // Copies every entry the target does not hold yet, then empties the source
+    private static void moveAll(SnapshotStore from, SnapshotStore to) {
+        try {
+            for (SnapshotStore.Entry e : from.list()) {
+                if (to.stat(e.name()) == null) {
+                    to.write(e.name(), out -> {
+                        try (InputStream in = from.open(e.name(), 0)) {
+                            in.transferTo(out);
+                        }
+                    });
+                }
+                from.delete(e.name());
             }
         } catch (IOException e) {
-            throw new RuntimeException("Failed to delete conversation: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to move conversations between storage engines: " + e.getMessage(), e);
         }
     }
 
-    public void saveHtml(byte[] htmlBytes, Path path) {
+    // Renames files from the old title-date layout to <id>.json. When one conversation was saved
+    // under several titles, the most recently updated copy wins and the others move to legacyDir.
+    private void migrateLegacyFiles() {
+        List<SnapshotStore.Entry> entries;
         try {
-            Files.write(path, htmlBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            entries = files.list();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save HTML: " + e.getMessage(), e);
+            System.err.println("Failed to list conversations for migration: " + e.getMessage());
+            return;
+        }
+        for (SnapshotStore.Entry entry : entries) {
+            Path legacy = conversationsDir.resolve(entry.name());
+            if (isIdName(entry.name())) continue;
+            try {
+                if (!Files.exists(legacy)) continue;
+                ConversationSummary s = ConversationIndex.readSummary(files, entry);
+                ConversationCodec legacyCodec = ConversationCodec.forFile(legacy);
+                if (s.getId() == null) {
+                    Conversation c;
+                    try (InputStream in = files.open(entry.name(), 0)) {
+                        c = legacyCodec.read(in);
+                    }
+                    c.setId(UUID.randomUUID().toString());
+                    files.write(nameFor(c.getId(), legacyCodec), out -> legacyCodec.write(c, out));
+                    Files.delete(legacy);
+                    continue;
+                }
+                Path target = conversationsDir.resolve(nameFor(s.getId(), legacyCodec));
+                if (legacy.equals(target)) continue;
+                Path existing = locateFile(s.getId());
+                if (existing == null) {
+                    Files.move(legacy, target);
+                } else {
+                    target = existing;
+                    ConversationSummary other = ConversationIndex.readSummary(files,
+                            files.stat(target.getFileName().toString()));
+                    Files.createDirectories(legacyDir);
+                    if (isNewer(s, other)) {
+                        Files.move(target, legacyDir.resolve(s.getId() + "-" + other.getModified()
+                                + ConversationCodec.forFile(target).extension()),
+                                StandardCopyOption.REPLACE_EXISTING);
+                        Files.move(legacy, target);
+                    } else {
+                        Files.move(legacy, legacyDir.resolve(entry.name()), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to migrate " + entry.name() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Files already in the <id> layout; ids are UUIDs, so this avoids parsing them on every start
+    private static boolean isIdName(String name) {
+        ConversationCodec c = ConversationCodec.forFileName(name);
+        if (c == null) return false;
+        try {
+            UUID.fromString(name.substring(0, name.length() - c.extension().length()));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
     }
+
+    private Path locateFile(String id) {
+        for (ConversationCodec c : ConversationCodec.ALL) {
+            Path p = conversationsDir.resolve(nameFor(id, c));
+            if (Files.exists(p)) return p;
+        }
+        return null;
+    }
+
+    private static boolean isNewer(ConversationSummary a, ConversationSummary b) {
+        if (a.getUpdatedAt() != null && b.getUpdatedAt() != null && !a.getUpdatedAt().equals(b.getUpdatedAt())) {
+            return a.getUpdatedAt().isAfter(b.getUpdatedAt());
+        }
+        return a.getMessageCount() > b.getMessageCount();
+    }
+
+    private static ConversationSummary summaryOf(Conversation conv, SnapshotStore.Entry entry) {
+        ConversationSummary s = new ConversationSummary();
+        s.setId(conv.getId());
+        s.setTitle(conv.getTitle());
+        s.setCreatedAt(conv.getCreatedAt());
+        s.setUpdatedAt(conv.getUpdatedAt());
+        s.setMessageCount(conv.getMessages() == null ? 0 : conv.getMessages().size());
+        s.setFile(entry.name());
+        s.setSize(entry.size());
+        s.setModified(entry.modified());
+        return s;
+    }
 }
@@ -0,0 +1,64 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.model.SearchHit;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Storage backend behind the controllers and the UI. ConversationRepository keeps snapshots as
+// files or packed segments; SqlConversationStore keeps them in an embedded database.
+public interface ConversationStore {
+
+    // A target, if given, names a file to write the conversation to as JSON
+    void save(Conversation conv, Path target);
+
+    // Stores many conversations at once; implementations may defer shared bookkeeping to the end
+    default void saveBatch(List<Conversation> batch) {
+        for (Conversation c : batch) save(c, null);
+    }
+
+    default List<ConversationSummary> listSummaries() {
+        return listSummaries(null);
+    }
+
+    // Newest first; the listener, if any, sees each summary as soon as it is available
+    List<ConversationSummary> listSummaries(ConversationIndex.Listener listener);
+
+    // One page of listSummaries()
+    List<ConversationSummary> listPage(int offset, int limit);
+
+    // Conversations updated at or after the given time, most recently updated first
+    List<ConversationSummary> listUpdatedSince(LocalDateTime since);
+
+    Conversation load(ConversationSummary summary);
+
+    Conversation load(String id);
+
+    ConversationHandle openHandle(ConversationSummary summary);
+
+    void appendMessage(Conversation conv, int index, Message message);
+
+    void appendDelta(Conversation conv, int index, String text);
+
+    void delete(ConversationSummary summary);
+
+    void delete(String id);
+
+    List<SearchHit> search(String query, int limit);
+
+    // Entries that could not be read during the last scan
+    default List<ConversationIndex.Failure> unreadable() {
+        return List.of();
+    }
+
+    // Runs after the store picks up changes made outside the app
+    default void addChangeListener(Runnable listener) {}
+
+    default void removeChangeListener(Runnable listener) {}
+
+    void close();
+}
@@ -0,0 +1,94 @@
+package com.courtney.aiassistant.service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the summary index in step with changes other programs make to the conversations
+// directory (folder sync, manual copies), re-reading only the files that changed. Bursts of
+// events are coalesced for SETTLE_MILLIS so a sync tool writing many files triggers one update.
+public class ConversationWatcher {
+
+    private static final long SETTLE_MILLIS = 250;
+
+    private final ConversationIndex index;
+    private final WatchService watchService;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    public ConversationWatcher(Path dir, ConversationIndex index) {
+        this.index = index;
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to watch conversations directory: " + e.getMessage(), e);
+        }
+        thread = new Thread(this::run, "conversation-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Called on the watcher thread after the index picked up an external change
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException ignore) {}
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!closed) {
+            Set<String> changed = new HashSet<>();
+            boolean overflow;
+            try {
+                overflow = collect(watchService.take(), changed);
+                WatchKey more;
+                while ((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(more, changed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            try {
+                // Events were lost, so only a full pass can tell what changed
+                boolean updated = overflow ? index.refresh() : index.refreshEntries(changed);
+                if (updated) {
+                    for (Runnable l : listeners) l.run();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to apply conversation changes: " + e.getMessage());
+            }
+        }
+    }
+
+    // Returns true if the key reported an overflow
+    private static boolean collect(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            String name = event.context().toString();
+            if (ConversationCodec.forFileName(name) != null) changed.add(name);
+        }
+        key.reset();
+        return overflow;
+    }
+}
@@ -0,0 +1,97 @@
+package com.courtney.aiassistant.service;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+// One file per conversation in the conversations directory
+public class DirectorySnapshotStore implements SnapshotStore {
+
+    private final Path dir;
+
+    public DirectorySnapshotStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    @Override
+    public List<Entry> list() throws IOException {
+        List<Entry> res = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, ConversationIndex.GLOB)) {
+            for (Path p : stream) {
+                if (ConversationCodec.forFile(p) == null) continue;
+                try {
+                    res.add(entryOf(p, Files.readAttributes(p, BasicFileAttributes.class)));
+                } catch (NoSuchFileException ignore) {}
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Entry stat(String name) throws IOException {
+        Path p = dir.resolve(name);
+        try {
+            return entryOf(p, Files.readAttributes(p, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream open(String name, long offset) throws IOException {
+        FileChannel ch = FileChannel.open(dir.resolve(name), StandardOpenOption.READ);
+        try {
+            ch.position(offset);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        return new BufferedInputStream(Channels.newInputStream(ch), 64 * 1024);
+    }
+
+    @Override
+    public Entry write(String name, Body body) throws IOException {
+        Path target = dir.resolve(name);
+        writeAtomically(target, body);
+        return stat(name);
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(dir.resolve(name));
+    }
+
+    // Writes next to the target and renames over it, so readers and crashes never see a partial file
+    public static void writeAtomically(Path target, Body body) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                body.writeTo(out);
+                out.getFD().sync();
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Entry entryOf(Path p, BasicFileAttributes attrs) {
+        return new Entry(p.getFileName().toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+}
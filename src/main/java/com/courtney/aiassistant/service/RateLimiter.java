@@ -0,0 +1,224 @@
+package com.courtney.aiassistant.service;
+
+import okhttp3.Response;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Client-side view of the API quota, one pair of token buckets (requests and tokens) per model.
+// The buckets are not guessed: every response's x-ratelimit-* headers cap them at what the server
+// reports (the local count may be lower, having taken requests started since), and they refill at
+// the rate that gets them full again by the reported reset.
+// Requests wait in arrival order; a retried request keeps its original place in the line.
+class RateLimiter {
+
+    // Part of each bucket left unused, so bursts from other clients on the key don't tip us over
+    private static final double HEADROOM = 0.05;
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Model> models = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "api-rate-limiter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // A place in the line, taken once per request and kept across its retries
+    long nextTicket() {
+        return sequence.incrementAndGet();
+    }
+
+    // Runs start once every request ahead of this ticket has gone and the model's quota allows it
+    void acquire(String model, long ticket, int tokens, Runnable start) {
+        acquire(model, ticket, tokens, () -> false, start);
+    }
+
+    // As above, but a request cancelled while it waits leaves the line without being charged
+    void acquire(String model, long ticket, int tokens, BooleanSupplier cancelled, Runnable start) {
+        synchronized (this) {
+            model(model).waiting.add(new Waiter(ticket, Math.max(1, tokens), cancelled, start));
+        }
+        pump(model);
+    }
+
+    // Runs task after the delay on the limiter's thread
+    void schedule(Runnable task, long delayMillis) {
+        scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Reads the quota the server reports; called for every response, successful or not
+    void update(String model, Response response) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Model m = model(model);
+            m.requests.update(response.header("x-ratelimit-limit-requests"),
+                    response.header("x-ratelimit-remaining-requests"),
+                    response.header("x-ratelimit-reset-requests"), now);
+            m.tokens.update(response.header("x-ratelimit-limit-tokens"),
+                    response.header("x-ratelimit-remaining-tokens"),
+                    response.header("x-ratelimit-reset-tokens"), now);
+        }
+        pump(model);
+    }
+
+    // Holds every request for the model until the server's back-off has passed
+    void pause(String model, long millis) {
+        synchronized (this) {
+            Model m = model(model);
+            m.pausedUntil = Math.max(m.pausedUntil, System.currentTimeMillis() + millis);
+        }
+        pump(model);
+    }
+
+    // Retry-After (seconds or an HTTP date) or retry-after-ms; -1 when the server gave neither
+    static long retryAfterMillis(Response response) {
+        String ms = response.header("retry-after-ms");
+        if (ms != null) {
+            try {
+                return (long) Double.parseDouble(ms.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        String after = response.header("Retry-After");
+        if (after == null || after.isBlank()) return -1;
+        try {
+            return (long) (Double.parseDouble(after.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(after.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    // The reset headers look like "20ms", "1s" or "6m0s"
+    static long parseDuration(String s) {
+        if (s == null) return -1;
+        Matcher m = DURATION.matcher(s);
+        double millis = 0;
+        boolean found = false;
+        while (m.find()) {
+            found = true;
+            double v = Double.parseDouble(m.group(1));
+            millis += switch (m.group(2)) {
+                case "h" -> v * 3_600_000;
+                case "m" -> v * 60_000;
+                case "s" -> v * 1000;
+                default -> v;
+            };
+        }
+        return found ? (long) Math.ceil(millis) : -1;
+    }
+
+    // Starts every waiter the quota allows, in ticket order, then sleeps until the head can go
+    private void pump(String model) {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            Model m = model(model);
+            m.waiting.removeIf(w -> w.cancelled.getAsBoolean());
+            long now = System.currentTimeMillis();
+            long wait = 0;
+            while (!m.waiting.isEmpty()) {
+                Waiter head = m.waiting.peek();
+                if (head.cancelled.getAsBoolean()) {
+                    m.waiting.poll();
+                    continue;
+                }
+                wait = Math.max(m.pausedUntil - now,
+                        Math.max(m.requests.waitFor(1, now), m.tokens.waitFor(head.tokens, now)));
+                if (wait > 0) break;
+                m.waiting.poll();
+                m.requests.take(1);
+                m.tokens.take(head.tokens);
+                ready.add(head.start);
+            }
+            if (!m.waiting.isEmpty() && wait > 0) {
+                long at = now + wait;
+                // A wake-up already due sooner will pump again anyway
+                if (m.wakeUp == null || m.wakeUp.isDone() || m.wakeAt > at) {
+                    if (m.wakeUp != null) m.wakeUp.cancel(false);
+                    m.wakeAt = at;
+                    m.wakeUp = scheduler.schedule(() -> pump(model), wait, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        for (Runnable start : ready) start.run();
+    }
+
+    private Model model(String name) {
+        return models.computeIfAbsent(name, k -> new Model());
+    }
+
+    private record Waiter(long ticket, int tokens, BooleanSupplier cancelled, Runnable start) {}
+
+    private static final class Model {
+        final Bucket requests = new Bucket();
+        final Bucket tokens = new Bucket();
+        final PriorityQueue<Waiter> waiting = new PriorityQueue<>(Comparator.comparingLong(Waiter::ticket));
+        long pausedUntil;
+        ScheduledFuture<?> wakeUp;
+        long wakeAt;
+    }
+
+    private static final class Bucket {
+        // Unlimited until the server has told us otherwise
+        double capacity = Double.POSITIVE_INFINITY;
+        double available = Double.POSITIVE_INFINITY;
+        double perMilli;
+        long refilledAt;
+
+        void update(String limit, String remaining, String reset, long now) {
+            double reported;
+            try {
+                if (limit == null || remaining == null) return;
+                reported = Double.parseDouble(remaining.trim());
+                double limitValue = Double.parseDouble(limit.trim());
+                if (!Double.isInfinite(capacity)) refill(now);
+                capacity = limitValue;
+            } catch (NumberFormatException e) {
+                return;
+            }
+            // The server counted up to this response; requests started since are taken here but not
+            // there yet, so whichever count is lower is what is really left
+            available = Math.min(Math.min(available, capacity), reported);
+            long resetMillis = parseDuration(reset);
+            // Full again by the reset; without one, assume the usual one-minute window
+            perMilli = (capacity - reported) > 0 && resetMillis > 0
+                    ? (capacity - reported) / resetMillis
+                    : capacity / 60_000;
+            refilledAt = now;
+        }
+
+        // Milliseconds until cost fits under the headroom; an oversized request waits for a full bucket
+        long waitFor(int cost, long now) {
+            if (Double.isInfinite(capacity)) return 0;
+            refill(now);
+            double usable = capacity * (1 - HEADROOM);
+            double needed = Math.min(cost, usable) + (capacity - usable) - available;
+            if (needed <= 0) return 0;
+            return perMilli > 0 ? (long) Math.ceil(needed / perMilli) : 1000;
+        }
+
+        void take(int cost) {
+            if (!Double.isInfinite(capacity)) available -= cost;
+        }
+
+        private void refill(long now) {
+            available = Math.min(capacity, available + (now - refilledAt) * perMilli);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Completed replies keyed by everything that decides them: model, system prompt, temperature,
+// output limit and the exact input sent. Recent entries are kept in memory up to a size limit,
+// least recently used first out; every entry is also written to <dir>/<aa>/<hash>.gz, a tier that
+// survives restarts and is trimmed by last use once it grows past its own limit. An entry older
+// than MAX_AGE_MILLIS is a miss in either tier, so a stale reply is not replayed indefinitely.
+public class ResponseCache {
+
+    // storedAt is when the reply was received; files written before it was recorded read as 0
+    public record Entry(String text, String responseId, long storedAt) {}
+
+    private static final long MEMORY_LIMIT_CHARS = 4L * 1024 * 1024;
+    private static final long DISK_LIMIT_BYTES = 64L * 1024 * 1024;
+    private static final long MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    // Writes between checks of the disk tier's size
+    private static final int TRIM_INTERVAL = 50;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path dir;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryChars;
+    private int writesSinceTrim = TRIM_INTERVAL; // trims on the first write of a session
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "response-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ResponseCache(Path dir) {
+        this.dir = dir;
+    }
+
+    // Lookups and writes that may touch the disk run here, off the FX and network threads
+    public ExecutorService executor() {
+        return io;
+    }
+
+    public static String key(String model, String systemPrompt, double temperature, int maxTokens, List<Message> input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, model);
+            update(digest, systemPrompt);
+            update(digest, Double.toString(temperature));
+            update(digest, Integer.toString(maxTokens));
+            for (Message m : input) {
+                update(digest, m.getRole());
+                update(digest, m.getContent());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Length-prefixed, so field boundaries cannot be shifted to produce the same bytes
+    private static void update(MessageDigest digest, String s) {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (s == null ? 0 : 1));
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    public Entry get(String key) {
+        synchronized (this) {
+            Entry e = memory.get(key);
+            if (e != null && !expired(e)) return e;
+        }
+        Path file = pathOf(key);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            Entry e = MAPPER.readValue(in, Entry.class);
+            // Expired: the fresh reply replaces it
+            if (expired(e)) return null;
+            // The file's mtime is its last use, which is what the disk tier is trimmed by
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            remember(key, e);
+            return e;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // A damaged entry is a miss; the fresh reply will replace it
+            System.err.println("Response cache read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry) {
+        remember(key, entry);
+        Path file = pathOf(key);
+        try {
+            Files.createDirectories(file.getParent());
+            DirectorySnapshotStore.writeAtomically(file, out -> {
+                try (OutputStream gzip = new GZIPOutputStream(out)) {
+                    MAPPER.writeValue(gzip, entry);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to cache response: " + e.getMessage(), e);
+        }
+        if (++writesSinceTrim >= TRIM_INTERVAL) {
+            writesSinceTrim = 0;
+            trimDisk();
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            memory.clear();
+            memoryChars = 0;
+        }
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.filter(p -> p.toString().endsWith(".gz")).toList()) Files.deleteIfExists(p);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear response cache: " + e.getMessage(), e);
+        }
+    }
+
+    public void close() {
+        io.shutdown();
+        try {
+            io.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean expired(Entry e) {
+        return System.currentTimeMillis() - e.storedAt() > MAX_AGE_MILLIS;
+    }
+
+    private synchronized void remember(String key, Entry entry) {
+        Entry old = memory.put(key, entry);
+        if (old != null) memoryChars -= old.text().length();
+        memoryChars += entry.text().length();
+        Iterator<Entry> it = memory.values().iterator();
+        while (memoryChars > MEMORY_LIMIT_CHARS && it.hasNext()) {
+            memoryChars -= it.next().text().length();
+            it.remove();
+        }
+    }
+
+    // Deletes files unused for longer than an entry lives, which must have expired, then the least
+    // recently used ones until the tier is back under its limit
+    private void trimDisk() {
+        if (!Files.isDirectory(dir)) return;
+        record CachedFile(Path path, long size, long used) {}
+        List<CachedFile> found = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.filter(p -> p.toString().endsWith(".gz")).toList()) {
+                try {
+                    CachedFile f = new CachedFile(p, Files.size(p), Files.getLastModifiedTime(p).toMillis());
+                    if (now - f.used() > MAX_AGE_MILLIS) {
+                        Files.deleteIfExists(p);
+                        continue;
+                    }
+                    found.add(f);
+                    total += f.size();
+                } catch (NoSuchFileException ignored) {
+                }
+            }
+            if (total <= DISK_LIMIT_BYTES) return;
+            found.sort(Comparator.comparingLong(CachedFile::used));
+            for (CachedFile f : found) {
+                if (total <= DISK_LIMIT_BYTES) break;
+                Files.deleteIfExists(f.path());
+                total -= f.size();
+            }
+        } catch (IOException e) {
+            System.err.println("Response cache trim failed: " + e.getMessage());
+        }
+    }
+
+    private Path pathOf(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".gz");
+    }
+}
@@ -0,0 +1,394 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.model.SearchHit;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+// Inverted index over message contents, ranked with BM25.
+// Postings live in memory as packed int arrays; the on-disk form is an append-only
+// log of per-file updates that is rewritten in compacted form once it grows stale.
+public class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERM_LENGTH = 40;
+    private static final int SNIPPET_BEFORE = 40;
+    private static final int SNIPPET_LENGTH = 160;
+
+    private static final byte FILE_RECORD = 'F';
+    private static final byte DOC_RECORD = 'D';
+    private static final byte REMOVE_RECORD = 'R';
+
+    public record Match(String file, int messageIndex, double score) {}
+
+    private static final class Doc {
+        final String file;
+        final int messageIndex;
+        final int length;
+        boolean live = true;
+        Doc(String file, int messageIndex, int length) {
+            this.file = file;
+            this.messageIndex = messageIndex;
+            this.length = length;
+        }
+    }
+
+    private static final class FileEntry {
+        long modified;
+        int messageCount;
+        final List<Integer> docIds = new ArrayList<>();
+    }
+
+    private static final class Postings {
+        int[] docIds = new int[4];
+        int[] freqs = new int[4];
+        int size;
+        void add(int docId, int tf) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docIds[size] = docId;
+            freqs[size] = tf;
+            size++;
+        }
+    }
+
+    private final Path logFile;
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<String, FileEntry> files = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private long liveLength = 0;
+    private int liveDocs = 0;
+    private int deadDocs = 0;
+    private boolean loaded = false;
+    private DataOutputStream log;
+
+    public SearchIndex(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    public synchronized Set<String> indexedFiles() {
+        load();
+        return new HashSet<>(files.keySet());
+    }
+
+    public synchronized long modifiedOf(String file) {
+        load();
+        FileEntry f = files.get(file);
+        return f == null ? -1 : f.modified;
+    }
+
+    // Index messages added since the last update; falls back to a full re-index if history shrank
+    public synchronized void update(String file, long modified, List<Message> messages) {
+        load();
+        FileEntry existing = files.get(file);
+        int from = 0;
+        if (existing != null && existing.messageCount <= messages.size()) {
+            from = existing.messageCount;
+        } else if (existing != null) {
+            // Logged, so a reload does not see the old documents alongside the new ones
+            remove(file);
+        }
+        indexMessages(file, modified, messages, from);
+    }
+
+    public synchronized void replace(String file, long modified, List<Message> messages) {
+        load();
+        remove(file);
+        indexMessages(file, modified, messages, 0);
+    }
+
+    public synchronized void remove(String file) {
+        load();
+        if (!files.containsKey(file)) return;
+        removeInternal(file);
+        try {
+            DataOutputStream out = log();
+            out.writeByte(REMOVE_RECORD);
+            out.writeUTF(file);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update search index: " + e.getMessage(), e);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized List<Match> search(String query, int limit) {
+        load();
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || liveDocs == 0) return List.of();
+
+        double avgLength = (double) liveLength / liveDocs;
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Postings p = postings.get(term);
+            if (p == null) continue;
+            // Postings of replaced or removed documents stay until compaction; df counts live ones only
+            int df = 0;
+            for (int i = 0; i < p.size; i++) {
+                if (docs.get(p.docIds[i]).live) df++;
+            }
+            if (df == 0) continue;
+            double idf = Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+            for (int i = 0; i < p.size; i++) {
+                Doc d = docs.get(p.docIds[i]);
+                if (!d.live) continue;
+                int tf = p.freqs[i];
+                double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * d.length / avgLength));
+                scores.merge(p.docIds[i], idf * norm, Double::sum);
+            }
+        }
+
+        PriorityQueue<Map.Entry<Integer, Double>> top =
+                new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+            top.add(e);
+            if (top.size() > limit) top.poll();
+        }
+        List<Match> res = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<Integer, Double> e = top.poll();
+            Doc d = docs.get(e.getKey());
+            res.add(new Match(d.file, d.messageIndex, e.getValue()));
+        }
+        Collections.reverse(res);
+        return res;
+    }
+
+    public synchronized void close() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException ignore) {
+        } finally {
+            log = null;
+        }
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> res = new ArrayList<>();
+        if (text == null) return res;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int len = i - start;
+                if (len > 1 && len <= MAX_TERM_LENGTH) {
+                    res.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return res;
+    }
+
+    // Short excerpt around the first query term, with the ranges of every matched term
+    public static SearchHit snippet(ConversationSummary summary, int messageIndex, double score,
+                                    String content, String query) {
+        Set<String> terms = new HashSet<>(tokenize(query));
+        String text = content == null ? "" : content;
+        List<int[]> ranges = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (terms.contains(text.substring(start, i).toLowerCase(Locale.ROOT))) {
+                    ranges.add(new int[]{start, i});
+                }
+                start = -1;
+            }
+        }
+        int from = ranges.isEmpty() ? 0 : Math.max(0, ranges.get(0)[0] - SNIPPET_BEFORE);
+        int to = Math.min(text.length(), from + SNIPPET_LENGTH);
+        String prefix = from > 0 ? "..." : "";
+        String body = text.substring(from, to);
+        String excerpt = (prefix + body + (to < text.length() ? "..." : "")).replace('\n', ' ').replace('\r', ' ');
+        List<int[]> highlights = new ArrayList<>();
+        for (int[] r : ranges) {
+            if (r[0] >= from && r[1] <= to) {
+                highlights.add(new int[]{r[0] - from + prefix.length(), r[1] - from + prefix.length()});
+            }
+        }
+        return new SearchHit(summary, messageIndex, score, excerpt, highlights);
+    }
+
+    private void indexMessages(String file, long modified, List<Message> messages, int from) {
+        try {
+            DataOutputStream out = log();
+            FileEntry entry = files.computeIfAbsent(file, k -> new FileEntry());
+            entry.modified = modified;
+            entry.messageCount = messages.size();
+            out.writeByte(FILE_RECORD);
+            out.writeUTF(file);
+            out.writeLong(modified);
+            out.writeInt(messages.size());
+            for (int i = from; i < messages.size(); i++) {
+                Message m = messages.get(i);
+                if (m == null || m.getContent() == null) continue;
+                Map<String, Integer> tf = termFrequencies(m.getContent());
+                if (tf.isEmpty()) continue;
+                int length = 0;
+                for (int c : tf.values()) length += c;
+                addDoc(file, i, length, tf);
+                writeDoc(out, file, i, length, tf);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update search index: " + e.getMessage(), e);
+        }
+        compactIfNeeded();
+    }
+
+    private static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (String t : tokenize(text)) tf.merge(t, 1, Integer::sum);
+        return tf;
+    }
+
+    private void addDoc(String file, int messageIndex, int length, Map<String, Integer> tf) {
+        int docId = docs.size();
+        docs.add(new Doc(file, messageIndex, length));
+        files.computeIfAbsent(file, k -> new FileEntry()).docIds.add(docId);
+        for (Map.Entry<String, Integer> e : tf.entrySet()) {
+            postings.computeIfAbsent(e.getKey(), k -> new Postings()).add(docId, e.getValue());
+        }
+        liveLength += length;
+        liveDocs++;
+    }
+
+    private void removeInternal(String file) {
+        FileEntry entry = files.remove(file);
+        if (entry == null) return;
+        for (int docId : entry.docIds) {
+            Doc d = docs.get(docId);
+            if (!d.live) continue;
+            d.live = false;
+            liveLength -= d.length;
+            liveDocs--;
+            deadDocs++;
+        }
+    }
+
+    private static void writeDoc(DataOutputStream out, String file, int messageIndex, int length,
+                                 Map<String, Integer> tf) throws IOException {
+        out.writeByte(DOC_RECORD);
+        out.writeUTF(file);
+        out.writeInt(messageIndex);
+        out.writeInt(length);
+        out.writeInt(tf.size());
+        for (Map.Entry<String, Integer> e : tf.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue());
+        }
+    }
+
+    private DataOutputStream log() throws IOException {
+        if (log == null) {
+            Files.createDirectories(logFile.getParent());
+            log = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(logFile.toFile(), true)));
+        }
+        return log;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(logFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) break;
+                switch (type) {
+                    case FILE_RECORD -> {
+                        FileEntry entry = files.computeIfAbsent(in.readUTF(), k -> new FileEntry());
+                        entry.modified = in.readLong();
+                        entry.messageCount = in.readInt();
+                    }
+                    case DOC_RECORD -> {
+                        String file = in.readUTF();
+                        int messageIndex = in.readInt();
+                        int length = in.readInt();
+                        int n = in.readInt();
+                        Map<String, Integer> tf = new HashMap<>(n * 2);
+                        for (int i = 0; i < n; i++) tf.put(in.readUTF(), in.readInt());
+                        addDoc(file, messageIndex, length, tf);
+                    }
+                    case REMOVE_RECORD -> removeInternal(in.readUTF());
+                    default -> throw new IOException("Corrupt search index record");
+                }
+            }
+        } catch (EOFException e) {
+            // Torn tail from an interrupted write; everything before it is intact
+        } catch (IOException e) {
+            // The index is derived data; start over and let the next sync rebuild it
+            clear();
+            try {
+                Files.deleteIfExists(logFile);
+            } catch (IOException ignore) {}
+        }
+    }
+
+    private void clear() {
+        docs.clear();
+        files.clear();
+        postings.clear();
+        liveLength = 0;
+        liveDocs = 0;
+        deadDocs = 0;
+    }
+
+    private void compactIfNeeded() {
+        if (deadDocs < 1000 || deadDocs < liveDocs) return;
+        try {
+            close();
+            Map<Integer, Map<String, Integer>> forward = new HashMap<>();
+            for (Map.Entry<String, Postings> e : postings.entrySet()) {
+                Postings p = e.getValue();
+                for (int i = 0; i < p.size; i++) {
+                    if (docs.get(p.docIds[i]).live) {
+                        forward.computeIfAbsent(p.docIds[i], k -> new HashMap<>()).put(e.getKey(), p.freqs[i]);
+                    }
+                }
+            }
+            Map<String, FileEntry> liveFiles = new HashMap<>(files);
+            List<Doc> liveDocList = new ArrayList<>(docs);
+            clear();
+
+            Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                for (Map.Entry<String, FileEntry> e : liveFiles.entrySet()) {
+                    String file = e.getKey();
+                    FileEntry old = e.getValue();
+                    FileEntry entry = files.computeIfAbsent(file, k -> new FileEntry());
+                    entry.modified = old.modified;
+                    entry.messageCount = old.messageCount;
+                    out.writeByte(FILE_RECORD);
+                    out.writeUTF(file);
+                    out.writeLong(old.modified);
+                    out.writeInt(old.messageCount);
+                    for (int docId : old.docIds) {
+                        Doc d = liveDocList.get(docId);
+                        Map<String, Integer> tf = forward.getOrDefault(docId, Map.of());
+                        addDoc(file, d.messageIndex, d.length, tf);
+                        writeDoc(out, file, d.messageIndex, d.length, tf);
+                    }
+                }
+            }
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact search index: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.courtney.aiassistant.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Packs snapshots into a few large append-only segment files instead of one file per
+// conversation. A record is [body length][crc32][type][modified][key length][key][value]; the
+// name -> offset index lives in memory and is rebuilt from the record headers on open.
+// Segments are memory-mapped, so reading an entry is a slice of the mapping rather than a file
+// open. The active segment rolls over at SEGMENT_BYTES, and maintain() rewrites sealed
+// segments that are at least half overwritten or deleted entries.
+public class SegmentStore implements SnapshotStore {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    // Growth of the active segment read through the channel before it is mapped again
+    private static final long REMAP_MIN_BYTES = 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    // Length and crc words, then type, modified and key length
+    private static final int PREFIX_BYTES = 8;
+    private static final int BODY_HEADER = 1 + 8 + 2;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".seg";
+
+    private static final class Segment {
+        final int number;
+        final Path file;
+        final FileChannel channel;
+        MappedByteBuffer map;
+        long size;
+        long liveBytes;
+
+        Segment(int number, Path file, FileChannel channel, long size) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private record Location(Segment segment, long recordStart, int recordBytes,
+                            long valueStart, int valueBytes, long modified) {}
+
+    private record Record(String key, byte type, long modified, int start, int recordBytes,
+                          int valueStart, int valueBytes) {}
+
+    private final Path dir;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> entries = new HashMap<>();
+    private Segment active;
+
+    public SegmentStore(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+                for (Path p : stream) {
+                    String name = p.getFileName().toString();
+                    int number;
+                    try {
+                        number = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    segments.put(number, openSegment(number));
+                }
+            }
+            Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+            for (Segment s : segments.values()) scan(s, s == last);
+            active = last != null ? last : newSegment();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open segment store: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized List<Entry> list() {
+        List<Entry> res = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Location> e : entries.entrySet()) {
+            res.add(new Entry(e.getKey(), e.getValue().valueBytes(), e.getValue().modified()));
+        }
+        return res;
+    }
+
+    @Override
+    public synchronized Entry stat(String name) {
+        Location loc = entries.get(name);
+        return loc == null ? null : new Entry(name, loc.valueBytes(), loc.modified());
+    }
+
+    // Read-only view of the entry's bytes, normally straight out of the mapping, or null
+    public synchronized ByteBuffer get(String name) throws IOException {
+        Location loc = entries.get(name);
+        return loc == null ? null : slice(loc);
+    }
+
+    @Override
+    public InputStream open(String name, long offset) throws IOException {
+        ByteBuffer buf = get(name);
+        if (buf == null) throw new NoSuchFileException(name);
+        buf.position((int) Math.min(offset, buf.limit()));
+        return new ByteBufferInputStream(buf);
+    }
+
+    @Override
+    public Entry write(String name, Body body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        body.writeTo(out);
+        ByteBuffer value = ByteBuffer.wrap(out.toByteArray());
+        synchronized (this) {
+            Location old = entries.get(name);
+            // The summary index notices changes by size and mtime, so never reuse the old stamp
+            long modified = Math.max(System.currentTimeMillis(), old == null ? 0 : old.modified() + 1);
+            Location loc = append(PUT, name, modified, value);
+            track(name, loc);
+            return new Entry(name, loc.valueBytes(), loc.modified());
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(String name) throws IOException {
+        if (!entries.containsKey(name)) return false;
+        append(TOMBSTONE, name, System.currentTimeMillis(), null);
+        Location old = entries.remove(name);
+        old.segment().liveBytes -= old.recordBytes();
+        return true;
+    }
+
+    @Override
+    public synchronized void maintain() {
+        for (Segment s : new ArrayList<>(segments.values())) {
+            if (s == active || s.liveBytes * 2 > s.size) continue;
+            try {
+                rewrite(s);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to compact " + s.file.getFileName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment s : segments.values()) {
+            s.map = null;
+            try {
+                s.channel.close();
+            } catch (IOException ignore) {}
+        }
+    }
+
+    // Closes the store and removes its segment files; used once everything has been moved elsewhere
+    public synchronized void deleteAll() throws IOException {
+        close();
+        for (Segment s : segments.values()) Files.deleteIfExists(s.file);
+        segments.clear();
+        entries.clear();
+    }
+
+    private void scan(Segment s, boolean last) throws IOException {
+        ByteBuffer m = mapped(s, s.size);
+        int pos = 0;
+        Record r;
+        while ((r = readRecord(m, pos, s.size)) != null) {
+            if (r.type() == PUT) {
+                track(r.key(), new Location(s, r.start(), r.recordBytes(), r.valueStart(), r.valueBytes(), r.modified()));
+            } else {
+                Location old = entries.remove(r.key());
+                if (old != null) old.segment().liveBytes -= old.recordBytes();
+            }
+            pos += r.recordBytes();
+        }
+        if (pos < s.size) {
+            // A write torn by a crash; everything before it is intact
+            if (last) {
+                s.channel.truncate(pos);
+                s.size = pos;
+                s.map = null;
+            } else {
+                System.err.println("Ignoring damaged tail of " + s.file.getFileName());
+            }
+        }
+    }
+
+    // Moves the live entries of a sealed segment into the active one and drops the file
+    private void rewrite(Segment s) throws IOException {
+        ByteBuffer m = mapped(s, s.size);
+        boolean olderExists = segments.firstKey() < s.number;
+        int pos = 0;
+        Record r;
+        while ((r = readRecord(m, pos, s.size)) != null) {
+            Location loc = entries.get(r.key());
+            if (r.type() == PUT && loc != null && loc.segment() == s && loc.recordStart() == r.start()) {
+                track(r.key(), append(PUT, r.key(), r.modified(), m.slice(r.valueStart(), r.valueBytes())));
+            } else if (r.type() == TOMBSTONE && loc == null && olderExists) {
+                // An older segment may still hold the value this deleted
+                append(TOMBSTONE, r.key(), r.modified(), null);
+            }
+            pos += r.recordBytes();
+        }
+        segments.remove(s.number);
+        s.map = null;
+        s.channel.close();
+        Files.deleteIfExists(s.file);
+    }
+
+    private void track(String key, Location loc) {
+        Location old = entries.put(key, loc);
+        if (old != null) old.segment().liveBytes -= old.recordBytes();
+        loc.segment().liveBytes += loc.recordBytes();
+    }
+
+    private Location append(byte type, String key, long modified, ByteBuffer value) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        if (k.length > 0xffff) throw new IllegalArgumentException("Entry name too long: " + key);
+        int valueBytes = value == null ? 0 : value.remaining();
+        int bodyBytes = BODY_HEADER + k.length + valueBytes;
+        ByteBuffer head = ByteBuffer.allocate(PREFIX_BYTES + BODY_HEADER + k.length);
+        head.putInt(bodyBytes).putInt(0).put(type).putLong(modified).putShort((short) k.length).put(k);
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), PREFIX_BYTES, head.capacity() - PREFIX_BYTES);
+        if (value != null) crc.update(value.duplicate());
+        head.putInt(4, (int) crc.getValue());
+        head.flip();
+
+        long recordBytes = PREFIX_BYTES + (long) bodyBytes;
+        if (active.size > 0 && active.size + recordBytes > SEGMENT_BYTES) roll();
+        long start = active.size;
+        ByteBuffer[] parts = value == null ? new ByteBuffer[]{head} : new ByteBuffer[]{head, value.duplicate()};
+        active.channel.position(start);
+        long written = 0;
+        while (written < recordBytes) written += active.channel.write(parts);
+        active.channel.force(false);
+        active.size += recordBytes;
+        return new Location(active, start, (int) recordBytes,
+                start + PREFIX_BYTES + BODY_HEADER + k.length, valueBytes, modified);
+    }
+
+    private void roll() throws IOException {
+        active.channel.force(true);
+        active = newSegment();
+    }
+
+    private Segment newSegment() throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment s = openSegment(number);
+        segments.put(number, s);
+        return s;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        Path file = dir.resolve(String.format("%s%06d%s", PREFIX, number, SUFFIX));
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(number, file, ch, ch.size());
+    }
+
+    // Scans and rewrites read the whole segment, so they take a mapping of all of it
+    private static MappedByteBuffer mapped(Segment s, long end) throws IOException {
+        if (s.map == null || s.map.capacity() < end) {
+            s.map = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+        }
+        return s.map;
+    }
+
+    // The active segment grows after it is mapped. Entries past the mapping are read from the
+    // channel until the segment has doubled (and by at least REMAP_MIN_BYTES), so it is mapped
+    // again a handful of times as it fills rather than on every read after an append; each
+    // replaced mapping is released once nothing refers to it.
+    private static ByteBuffer slice(Location loc) throws IOException {
+        Segment s = loc.segment();
+        long end = loc.valueStart() + loc.valueBytes();
+        if (s.map == null || (s.map.capacity() < end && s.size - s.map.capacity() >= Math.max(s.map.capacity(), REMAP_MIN_BYTES))) {
+            s.map = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+        }
+        if (end <= s.map.capacity()) return s.map.slice((int) loc.valueStart(), loc.valueBytes());
+        ByteBuffer buf = ByteBuffer.allocate(loc.valueBytes());
+        while (buf.hasRemaining()) {
+            if (s.channel.read(buf, loc.valueStart() + buf.position()) < 0) {
+                throw new EOFException("Entry runs past the end of " + s.file.getFileName());
+            }
+        }
+        return buf.flip().asReadOnlyBuffer();
+    }
+
+    // Null at the end of the segment or at a record that is truncated or fails its checksum
+    private static Record readRecord(ByteBuffer m, int pos, long limit) {
+        if (pos + PREFIX_BYTES > limit) return null;
+        int bodyBytes = m.getInt(pos);
+        if (bodyBytes < BODY_HEADER || pos + PREFIX_BYTES + (long) bodyBytes > limit) return null;
+        CRC32 crc = new CRC32();
+        crc.update(m.slice(pos + PREFIX_BYTES, bodyBytes));
+        if ((int) crc.getValue() != m.getInt(pos + 4)) return null;
+        int body = pos + PREFIX_BYTES;
+        byte type = m.get(body);
+        long modified = m.getLong(body + 1);
+        int keyBytes = m.getShort(body + 9) & 0xffff;
+        if (BODY_HEADER + keyBytes > bodyBytes) return null;
+        String key = StandardCharsets.UTF_8.decode(m.slice(body + BODY_HEADER, keyBytes)).toString();
+        int valueStart = body + BODY_HEADER + keyBytes;
+        return new Record(key, type, modified, pos, PREFIX_BYTES + bodyBytes, valueStart, bodyBytes - BODY_HEADER - keyBytes);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.Message;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A conversation snapshot whose messages stay on disk until asked for. Opening streams the
+// snapshot once to read the header and remember where each message starts; pages are then
+// read by seeking straight to those offsets, so heap use follows the page size. Codecs that
+// cannot seek (compressed or back-referencing formats) stream past the skipped messages instead.
+class SnapshotHandle implements ConversationHandle {
+
+    private final SnapshotStore store;
+    private final String name;
+    private final ConversationJournal journal;
+    private final String id;
+    private final BlobStore blobs;
+
+    private Conversation header;
+    private long[] offsets = new long[0];
+    private List<Message> tail = List.of();
+    private long snapshotSize = -1;
+    private long snapshotModified = -1;
+
+    SnapshotHandle(SnapshotStore store, String name, ConversationJournal journal, String id, BlobStore blobs) {
+        this.store = store;
+        this.name = name;
+        this.journal = journal;
+        this.id = id;
+        this.blobs = blobs;
+        scan();
+    }
+
+    @Override
+    public Conversation header() {
+        return header;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length + tail.size();
+    }
+
+    @Override
+    public List<Message> page(int from, int to) {
+        refreshIfChanged();
+        from = Math.max(0, from);
+        to = Math.min(size(), to);
+        List<Message> res = new ArrayList<>(Math.max(0, to - from));
+        if (from >= to) return res;
+        int snapshotEnd = Math.min(to, offsets.length);
+        if (from < snapshotEnd) {
+            ConversationCodec codec = ConversationCodec.forFileName(name);
+            if (codec.seekable()) {
+                readSeeking(codec, from, snapshotEnd, res);
+            } else {
+                readStreaming(codec, from, snapshotEnd, res);
+            }
+        }
+        for (int i = Math.max(from, offsets.length); i < to; i++) {
+            res.add(tail.get(i - offsets.length));
+        }
+        return res;
+    }
+
+    // Starts reading at the first wanted message; an opening bracket in front turns the rest of the
+    // messages array into a parseable array, so one stream serves the whole page
+    private void readSeeking(ConversationCodec codec, int from, int to, List<Message> res) {
+        InputStream rest;
+        try {
+            rest = store.open(name, offsets[from]);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read messages: " + e.getMessage(), e);
+        }
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(new byte[]{'['}), rest);
+        try (JsonParser p = codec.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) return;
+            for (int i = from; i < to && p.nextToken() == JsonToken.START_OBJECT; i++) {
+                res.add(blobs.attach(p.readValueAs(Message.class)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read messages: " + e.getMessage(), e);
+        }
+    }
+
+    private void readStreaming(ConversationCodec codec, int from, int to, List<Message> res) {
+        try (JsonParser p = codec.createParser(store.open(name, 0))) {
+            if (!toMessagesArray(p)) return;
+            int i = 0;
+            while (i < to && p.nextToken() == JsonToken.START_OBJECT) {
+                if (i++ < from) {
+                    p.skipChildren();
+                } else {
+                    res.add(blobs.attach(p.readValueAs(Message.class)));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read messages: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean toMessagesArray(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) return false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("messages".equals(field) && value == JsonToken.START_ARRAY) return true;
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    // Compaction may rewrite the snapshot while the handle is open; message indexes are stable,
+    // so a rescan is enough to bring the offsets back in line
+    private void refreshIfChanged() {
+        try {
+            SnapshotStore.Entry e = store.stat(name);
+            if (e == null) {
+                if (snapshotSize != -1) scan();
+                return;
+            }
+            if (e.size() != snapshotSize || e.modified() != snapshotModified) scan();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read conversation: " + e.getMessage(), e);
+        }
+    }
+
+    private void scan() {
+        Conversation h = new Conversation();
+        h.setId(id);
+        long[] found = new long[16];
+        int count = 0;
+        snapshotSize = -1;
+        snapshotModified = -1;
+        try {
+            SnapshotStore.Entry e = store.stat(name);
+            if (e != null) {
+                snapshotSize = e.size();
+                snapshotModified = e.modified();
+                try (JsonParser p = ConversationCodec.forFileName(name).createParser(store.open(name, 0))) {
+                    if (p.nextToken() != JsonToken.START_OBJECT) {
+                        throw new IOException("Not a conversation: " + name);
+                    }
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = p.currentName();
+                        JsonToken value = p.nextToken();
+                        switch (field) {
+                            case "id" -> h.setId(p.getValueAsString());
+                            case "title" -> h.setTitle(p.getValueAsString());
+                            case "createdAt" -> h.setCreatedAt(p.readValueAs(LocalDateTime.class));
+                            case "updatedAt" -> h.setUpdatedAt(p.readValueAs(LocalDateTime.class));
+                            case "contextSummary" -> h.setContextSummary(p.getValueAsString());
+                            case "summarizedCount" -> h.setSummarizedCount(p.getValueAsInt());
+                            case "messages" -> {
+                                if (value != JsonToken.START_ARRAY) break;
+                                while (p.nextToken() == JsonToken.START_OBJECT) {
+                                    if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                                    found[count++] = p.currentTokenLocation().getByteOffset();
+                                    p.skipChildren();
+                                }
+                            }
+                            default -> p.skipChildren();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open conversation: " + e.getMessage(), e);
+        }
+        offsets = Arrays.copyOf(found, count);
+        ConversationJournal.Tail t = journal.tail(h.getId(), count);
+        if (t.title() != null) h.setTitle(t.title());
+        if (t.createdAt() != null && snapshotSize == -1) h.setCreatedAt(t.createdAt());
+        if (t.updatedAt() != null) h.setUpdatedAt(t.updatedAt());
+        tail = t.messages();
+        header = h;
+    }
+}
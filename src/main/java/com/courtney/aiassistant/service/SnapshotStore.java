@@ -0,0 +1,35 @@
+package com.courtney.aiassistant.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+// Where conversation snapshots are kept. Entries are named <id> plus the codec extension in
+// every store, so the summary and search indexes stay valid whichever engine holds the bytes.
+public interface SnapshotStore {
+
+    record Entry(String name, long size, long modified) {}
+
+    interface Body {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    List<Entry> list() throws IOException;
+
+    // Null if there is no such entry
+    Entry stat(String name) throws IOException;
+
+    // Stream of the entry's bytes starting at the given offset
+    InputStream open(String name, long offset) throws IOException;
+
+    // Replaces the entry atomically; readers see either the old bytes or the new ones
+    Entry write(String name, Body body) throws IOException;
+
+    boolean delete(String name) throws IOException;
+
+    // Periodic housekeeping, run from the repository's background thread
+    default void maintain() {}
+
+    default void close() {}
+}
@@ -0,0 +1,515 @@
+package com.courtney.aiassistant.service;
+
+import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.Message;
+import com.courtney.aiassistant.model.SearchHit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Conversations in an embedded H2 database, one row per conversation and one per message.
+// Listing, paging and date-range queries are indexed lookups, appending a turn is a single
+// insert, and an opened conversation pages its messages straight out of the message table.
+public class SqlConversationStore implements ConversationStore {
+
+    private static final String SUMMARY_COLUMNS = "id, title, created_at, updated_at, message_count, modified";
+    // Characters of streamed text buffered before they are written to the reply's row
+    private static final int DELTA_CHUNK = 4096;
+    // Conversations whose last saved message list is remembered
+    private static final int WRITTEN_MEMO = 16;
+
+    private final Connection conn;
+    private final SearchIndex searchIndex;
+    private boolean searchSynced = false;
+    // The reply being streamed into each conversation, not yet written
+    private final Map<String, PendingDelta> pendingDeltas = new HashMap<>();
+
+    // The message list last written for recently saved conversations. Messages are never changed
+    // once added, so a row whose message is the very same object is already up to date.
+    private final Map<String, List<Message>> written = new LinkedHashMap<>(WRITTEN_MEMO, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Message>> eldest) {
+            return size() > WRITTEN_MEMO;
+        }
+    };
+
+    private record PendingDelta(Conversation conv, int index, StringBuilder text) {}
+
+    public SqlConversationStore(Path dbDir) {
+        try {
+            Files.createDirectories(dbDir);
+            conn = DriverManager.getConnection("jdbc:h2:" + dbDir.resolve("conversations").toAbsolutePath());
+            createSchema();
+        } catch (IOException | SQLException e) {
+            throw new RuntimeException("Failed to open conversation database: " + e.getMessage(), e);
+        }
+        searchIndex = new SearchIndex(dbDir.resolve("messages.idx"));
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS conversation ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "title VARCHAR(4096), "
+                    + "created_at TIMESTAMP, "
+                    + "updated_at TIMESTAMP, "
+                    + "message_count INT NOT NULL DEFAULT 0, "
+                    + "modified BIGINT NOT NULL DEFAULT 0)");
+            st.execute("CREATE INDEX IF NOT EXISTS conversation_created ON conversation(created_at)");
+            st.execute("CREATE INDEX IF NOT EXISTS conversation_updated ON conversation(updated_at)");
+            // complete is false while a response is still streaming into the row
+            st.execute("CREATE TABLE IF NOT EXISTS message ("
+                    + "conversation_id VARCHAR(255) NOT NULL, "
+                    + "idx INT NOT NULL, "
+                    + "role VARCHAR(32), "
+                    + "content CLOB, "
+                    + "ts TIMESTAMP, "
+                    + "complete BOOLEAN NOT NULL DEFAULT TRUE, "
+                    + "PRIMARY KEY (conversation_id, idx), "
+                    + "FOREIGN KEY (conversation_id) REFERENCES conversation(id) ON DELETE CASCADE)");
+            // incomplete marks a stored reply that was stopped before it finished
+            st.execute("ALTER TABLE message ADD COLUMN IF NOT EXISTS incomplete BOOLEAN NOT NULL DEFAULT FALSE");
+            // Rolling summary of the first summarized_count messages, sent in their place
+            st.execute("ALTER TABLE conversation ADD COLUMN IF NOT EXISTS context_summary CLOB");
+            st.execute("ALTER TABLE conversation ADD COLUMN IF NOT EXISTS summarized_count INT NOT NULL DEFAULT 0");
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM conversation")) {
+            return rs.next() && rs.getLong(1) == 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to query conversations: " + e.getMessage(), e);
+        }
+    }
+
+    // Copies every conversation from another store; used once when switching to the database
+    public int importFrom(ConversationStore other) {
+        int n = 0;
+        for (ConversationSummary s : other.listSummaries()) {
+            try {
+                Conversation c = other.load(s);
+                if (c.getId() == null) c.setId(UUID.randomUUID().toString());
+                save(c, null);
+                n++;
+            } catch (RuntimeException e) {
+                System.err.println("Skipping " + s.getFile() + ": " + e.getMessage());
+            }
+        }
+        return n;
+    }
+
+    // An explicit target gets a JSON copy; the database row is written either way
+    @Override
+    public void save(Conversation conv, Path target) {
+        if (conv.getId() == null) conv.setId(UUID.randomUUID().toString());
+        if (target != null) {
+            try {
+                DirectorySnapshotStore.writeAtomically(target, out -> ConversationCodec.JSON.write(conv, out));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to save conversation: " + e.getMessage(), e);
+            }
+        }
+        List<Message> messages = conv.getMessages() == null ? List.of() : conv.getMessages();
+        long modified;
+        synchronized (this) {
+            try {
+                conn.setAutoCommit(false);
+                modified = upsertHeader(conv, messages.size());
+                // Usually only the new turn is written; a restored archive or a re-import can replace
+                // earlier turns under the same id, and is rewritten from the first that differs
+                int from = firstChanged(conv.getId(), messages);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "MERGE INTO message (conversation_id, idx, role, content, ts, incomplete, complete) KEY (conversation_id, idx) "
+                                + "VALUES (?, ?, ?, ?, ?, ?, TRUE)")) {
+                    for (int i = from; i < messages.size(); i++) {
+                        bindMessage(ps, conv.getId(), i, messages.get(i));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                // A reply still streaming into its row is not part of the saved copy yet
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM message WHERE conversation_id = ? AND idx >= ? AND complete")) {
+                    ps.setString(1, conv.getId());
+                    ps.setInt(2, messages.size());
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                written.put(conv.getId(), new ArrayList<>(messages));
+            } catch (SQLException e) {
+                rollback();
+                written.remove(conv.getId());
+                throw new RuntimeException("Failed to save conversation: " + e.getMessage(), e);
+            } finally {
+                autoCommit();
+            }
+        }
+        searchIndex.update(conv.getId(), modified, messages);
+    }
+
+    // Index of the first stored row that does not match messages. Without a remembered list (first
+    // save this session, an import) the rows are compared, which reads them but writes nothing.
+    private int firstChanged(String id, List<Message> messages) throws SQLException {
+        List<Message> last = written.get(id);
+        if (last != null) {
+            int n = Math.min(last.size(), messages.size());
+            for (int i = 0; i < n; i++) {
+                if (last.get(i) != messages.get(i)) return i;
+            }
+            return n;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT idx, role, content, incomplete FROM message WHERE conversation_id = ? AND complete ORDER BY idx")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                int i = 0;
+                while (i < messages.size() && rs.next()) {
+                    Message m = messages.get(i);
+                    if (rs.getInt(1) != i || !Objects.equals(rs.getString(2), m.getRole())
+                            || rs.getBoolean(4) != m.isIncomplete() || !Objects.equals(rs.getString(3), m.getContent())) {
+                        return i;
+                    }
+                    i++;
+                }
+                return i;
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<ConversationSummary> listSummaries(ConversationIndex.Listener listener) {
+        return querySummaries("SELECT " + SUMMARY_COLUMNS + " FROM conversation ORDER BY created_at DESC NULLS LAST",
+                listener);
+    }
+
+    @Override
+    public synchronized List<ConversationSummary> listPage(int offset, int limit) {
+        return querySummaries("SELECT " + SUMMARY_COLUMNS + " FROM conversation ORDER BY created_at DESC NULLS LAST "
+                + "LIMIT " + Math.max(0, limit) + " OFFSET " + Math.max(0, offset), null);
+    }
+
+    @Override
+    public synchronized List<ConversationSummary> listUpdatedSince(LocalDateTime since) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT " + SUMMARY_COLUMNS
+                + " FROM conversation WHERE updated_at >= ? ORDER BY updated_at DESC")) {
+            ps.setTimestamp(1, Timestamp.valueOf(since));
+            return readSummaries(ps.executeQuery(), null);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list conversations: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Conversation load(ConversationSummary summary) {
+        return load(summary.getId());
+    }
+
+    @Override
+    public synchronized Conversation load(String id) {
+        Conversation conv = header(id);
+        if (conv == null) throw new RuntimeException("Failed to open conversation: no conversation " + id);
+        conv.setMessages(messages(id, 0, Integer.MAX_VALUE));
+        return conv;
+    }
+
+    @Override
+    public ConversationHandle openHandle(ConversationSummary summary) {
+        Conversation h = header(summary.getId());
+        if (h == null) throw new RuntimeException("Failed to open conversation: no conversation " + summary.getId());
+        return new ConversationHandle() {
+            @Override public Conversation header() { return h; }
+            @Override public int size() { return messageRows(h.getId()); }
+            @Override public List<Message> page(int from, int to) { return messages(h.getId(), from, to); }
+        };
+    }
+
+    @Override
+    public synchronized void appendMessage(Conversation conv, int index, Message message) {
+        // The finished message holds all the text; anything still buffered for it is superseded
+        PendingDelta pending = pendingDeltas.get(conv.getId());
+        if (pending != null && pending.index() == index) pendingDeltas.remove(conv.getId());
+        try {
+            flushDeltas(conv.getId());
+            upsertHeader(conv, -1);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "MERGE INTO message (conversation_id, idx, role, content, ts, incomplete, complete) KEY (conversation_id, idx) "
+                            + "VALUES (?, ?, ?, ?, ?, ?, TRUE)")) {
+                bindMessage(ps, conv.getId(), index, message);
+                ps.executeUpdate();
+            }
+            updateCount(conv.getId());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to append message: " + e.getMessage(), e);
+        }
+    }
+
+    // Streamed text accumulates in an incomplete row, so a crash mid-response keeps what arrived.
+    // Deltas are buffered and written a chunk at a time, since each write copies the whole CLOB;
+    // the header and the search index are left alone until appendMessage completes the turn.
+    @Override
+    public synchronized void appendDelta(Conversation conv, int index, String text) {
+        PendingDelta pending = pendingDeltas.get(conv.getId());
+        try {
+            if (pending != null && pending.index() != index) {
+                flushDeltas(conv.getId());
+                pending = null;
+            }
+            if (pending == null) {
+                pending = new PendingDelta(conv, index, new StringBuilder());
+                pendingDeltas.put(conv.getId(), pending);
+            }
+            pending.text().append(text);
+            if (pending.text().length() >= DELTA_CHUNK) flushDeltas(conv.getId());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to append to conversation: " + e.getMessage(), e);
+        }
+    }
+
+    private void flushDeltas(String id) throws SQLException {
+        PendingDelta pending = pendingDeltas.remove(id);
+        if (pending == null || pending.text().length() == 0) return;
+        String text = pending.text().toString();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE message SET content = content || ? WHERE conversation_id = ? AND idx = ? AND NOT complete")) {
+            ps.setString(1, text);
+            ps.setString(2, id);
+            ps.setInt(3, pending.index());
+            if (ps.executeUpdate() > 0) return;
+        }
+        // First chunk of the reply; a conversation never saved before needs its row first
+        if (!headerExists(id)) upsertHeader(pending.conv(), -1);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO message (conversation_id, idx, role, content, ts, complete) VALUES (?, ?, 'assistant', ?, ?, FALSE)")) {
+            ps.setString(1, id);
+            ps.setInt(2, pending.index());
+            ps.setString(3, text);
+            ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            ps.executeUpdate();
+        }
+    }
+
+    private boolean headerExists(String id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM conversation WHERE id = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public void delete(ConversationSummary summary) {
+        delete(summary.getId());
+    }
+
+    @Override
+    public synchronized void delete(String id) {
+        if (id == null) return;
+        written.remove(id);
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM conversation WHERE id = ?")) {
+            ps.setString(1, id);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to delete conversation: " + e.getMessage(), e);
+        }
+        searchIndex.remove(id);
+    }
+
+    @Override
+    public synchronized List<SearchHit> search(String query, int limit) {
+        if (!searchSynced) syncSearchIndex();
+        Map<String, ConversationSummary> byId = new HashMap<>();
+        for (ConversationSummary s : listSummaries(null)) byId.put(s.getId(), s);
+        List<SearchHit> hits = new ArrayList<>();
+        for (SearchIndex.Match m : searchIndex.search(query, limit)) {
+            ConversationSummary summary = byId.get(m.file());
+            if (summary == null) continue;
+            List<Message> one = messages(m.file(), m.messageIndex(), m.messageIndex() + 1);
+            if (one.isEmpty()) continue;
+            hits.add(SearchIndex.snippet(summary, m.messageIndex(), m.score(), one.get(0).getContent(), query));
+        }
+        return hits;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            for (String id : new ArrayList<>(pendingDeltas.keySet())) flushDeltas(id);
+        } catch (SQLException e) {
+            System.err.println("Failed to write streamed text: " + e.getMessage());
+        }
+        searchIndex.close();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close conversation database: " + e.getMessage());
+        }
+    }
+
+    // Turns appended since the last full index pass are picked up here, by comparing write stamps
+    private void syncSearchIndex() {
+        Set<String> stale = searchIndex.indexedFiles();
+        for (ConversationSummary s : listSummaries(null)) {
+            stale.remove(s.getId());
+            if (searchIndex.modifiedOf(s.getId()) == s.getModified()) continue;
+            searchIndex.replace(s.getId(), s.getModified(), messages(s.getId(), 0, Integer.MAX_VALUE));
+        }
+        for (String id : stale) searchIndex.remove(id);
+        searchSynced = true;
+    }
+
+    // Inserts or updates the conversation row; a negative count leaves message_count alone.
+    // Returns the new write stamp.
+    private long upsertHeader(Conversation conv, int messageCount) throws SQLException {
+        long modified = System.currentTimeMillis();
+        boolean exists = headerExists(conv.getId());
+        String sql = exists
+                ? "UPDATE conversation SET title = ?, created_at = ?, updated_at = ?, context_summary = ?, summarized_count = ?, modified = ?"
+                        + (messageCount >= 0 ? ", message_count = ?" : "") + " WHERE id = ?"
+                : "INSERT INTO conversation (title, created_at, updated_at, context_summary, summarized_count, modified, message_count, id) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setString(i++, conv.getTitle());
+            ps.setTimestamp(i++, conv.getCreatedAt() == null ? null : Timestamp.valueOf(conv.getCreatedAt()));
+            ps.setTimestamp(i++, conv.getUpdatedAt() == null ? null : Timestamp.valueOf(conv.getUpdatedAt()));
+            synchronized (conv) {
+                ps.setString(i++, conv.getContextSummary());
+                ps.setInt(i++, conv.getSummarizedCount());
+            }
+            ps.setLong(i++, modified);
+            if (!exists || messageCount >= 0) ps.setInt(i++, Math.max(0, messageCount));
+            ps.setString(i, conv.getId());
+            ps.executeUpdate();
+        }
+        searchSynced = false;
+        return modified;
+    }
+
+    private void updateCount(String id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE conversation SET message_count = "
+                + "(SELECT COUNT(*) FROM message WHERE conversation_id = ? AND complete) WHERE id = ?")) {
+            ps.setString(1, id);
+            ps.setString(2, id);
+            ps.executeUpdate();
+        }
+    }
+
+    private synchronized int messageRows(String id) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM message WHERE conversation_id = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read messages: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized Conversation header(String id) {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT id, title, created_at, updated_at, context_summary, summarized_count FROM conversation WHERE id = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                Conversation c = new Conversation();
+                c.setId(rs.getString(1));
+                c.setTitle(rs.getString(2));
+                c.setCreatedAt(toDateTime(rs.getTimestamp(3)));
+                c.setUpdatedAt(toDateTime(rs.getTimestamp(4)));
+                c.setContextSummary(rs.getString(5));
+                c.setSummarizedCount(rs.getInt(6));
+                c.setMessages(new ArrayList<>());
+                return c;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open conversation: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized List<Message> messages(String id, int from, int to) {
+        List<Message> res = new ArrayList<>();
+        if (from >= to) return res;
+        // A row still marked not complete was streaming when the app stopped
+        try (PreparedStatement ps = conn.prepareStatement("SELECT role, content, ts, incomplete OR NOT complete FROM message "
+                + "WHERE conversation_id = ? AND idx >= ? AND idx < ? ORDER BY idx")) {
+            ps.setString(1, id);
+            ps.setInt(2, Math.max(0, from));
+            ps.setInt(3, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Message m = new Message();
+                    m.setRole(rs.getString(1));
+                    m.setContent(rs.getString(2));
+                    m.setTimestamp(toDateTime(rs.getTimestamp(3)));
+                    m.setIncomplete(rs.getBoolean(4));
+                    res.add(m);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read messages: " + e.getMessage(), e);
+        }
+        return res;
+    }
+
+    private List<ConversationSummary> querySummaries(String sql, ConversationIndex.Listener listener) {
+        try (Statement st = conn.createStatement()) {
+            return readSummaries(st.executeQuery(sql), listener);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list conversations: " + e.getMessage(), e);
+        }
+    }
+
+    // The id doubles as the file key, which is what the search index and the UI key rows by
+    private static List<ConversationSummary> readSummaries(ResultSet rs, ConversationIndex.Listener listener)
+            throws SQLException {
+        List<ConversationSummary> res = new ArrayList<>();
+        try (rs) {
+            while (rs.next()) {
+                ConversationSummary s = new ConversationSummary();
+                s.setId(rs.getString(1));
+                s.setFile(s.getId());
+                s.setTitle(rs.getString(2));
+                s.setCreatedAt(toDateTime(rs.getTimestamp(3)));
+                s.setUpdatedAt(toDateTime(rs.getTimestamp(4)));
+                s.setMessageCount(rs.getInt(5));
+                s.setModified(rs.getLong(6));
+                res.add(s);
+                if (listener != null) listener.loaded(s);
+            }
+        }
+        return res;
+    }
+
+    private static void bindMessage(PreparedStatement ps, String id, int index, Message m) throws SQLException {
+        ps.setString(1, id);
+        ps.setInt(2, index);
+        ps.setString(3, m.getRole());
+        ps.setString(4, m.getContent());
+        ps.setTimestamp(5, m.getTimestamp() == null ? null : Timestamp.valueOf(m.getTimestamp()));
+        ps.setBoolean(6, m.isIncomplete());
+    }
+
+    private static LocalDateTime toDateTime(Timestamp ts) {
+        return ts == null ? null : ts.toLocalDateTime();
+    }
+
+    private void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException ignore) {}
+    }
+
+    private void autoCommit() {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException ignore) {}
+    }
+}
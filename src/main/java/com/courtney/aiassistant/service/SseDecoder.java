@@ -0,0 +1,118 @@
+package com.courtney.aiassistant.service;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Options;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// Server-sent events read straight off an Okio source. Event names are matched against a fixed
+// table with Options.select, so no String is built for them, and data lines are copied into one
+// reused byte array that the handler can hand to a byte-based JSON parser.
+public class SseDecoder {
+
+    // Event type passed to the handler when the event had no "event:" line
+    public static final int NO_TYPE = -1;
+    // Event type passed to the handler for a name that is not in the table
+    public static final int OTHER_TYPE = -2;
+
+    public interface Handler {
+        // data[0, length) holds the event's data lines joined by '\n'; return false to stop reading
+        boolean onEvent(int type, byte[] data, int length) throws IOException;
+    }
+
+    private static final Options FIELDS = Options.of(
+            ByteString.encodeUtf8("data:"), ByteString.encodeUtf8("event:"));
+    private static final int DATA = 0;
+
+    private final Options types;
+    private final int[] typeLengths;
+    private byte[] data = new byte[8 * 1024];
+
+    // types are the event names the handler tells apart, identified by their position in the list
+    public SseDecoder(List<String> types) {
+        ByteString[] names = new ByteString[types.size()];
+        typeLengths = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = ByteString.encodeUtf8(types.get(i));
+            typeLengths[i] = names[i].size();
+        }
+        this.types = Options.of(names);
+    }
+
+    // Reads events until the stream ends or the handler asks to stop
+    public void decode(BufferedSource source, Handler handler) throws IOException {
+        Buffer buffer = source.getBuffer();
+        int type = NO_TYPE;
+        int length = 0;
+        boolean hasData = false;
+        while (true) {
+            long newline = source.indexOf((byte) '\n');
+            if (newline == -1) {
+                // A final event without its blank line is dropped, as the SSE spec requires
+                return;
+            }
+            int lineLength = (int) newline;
+            if (lineLength > 0 && buffer.getByte(newline - 1) == '\r') lineLength--;
+            if (lineLength == 0) {
+                source.skip(newline + 1);
+                if (hasData && !handler.onEvent(type, data, length)) return;
+                type = NO_TYPE;
+                length = 0;
+                hasData = false;
+                continue;
+            }
+            int field = source.select(FIELDS);
+            if (field == -1) {
+                // Comments (":") and fields we have no use for, such as id: and retry:
+                source.skip(newline + 1);
+                continue;
+            }
+            int rest = lineLength - (field == DATA ? "data:".length() : "event:".length());
+            if (rest > 0 && buffer.getByte(0) == ' ') {
+                source.skip(1);
+                rest--;
+            }
+            if (field == DATA) {
+                if (hasData) length = append((byte) '\n', length);
+                length = append(buffer, rest, length);
+                hasData = true;
+            } else {
+                type = readType(source, rest);
+            }
+            // The rest of the line: its terminator, or an event name we did not recognise
+            source.skip(buffer.indexOf((byte) '\n') + 1);
+        }
+    }
+
+    private int readType(BufferedSource source, int rest) throws IOException {
+        int index = source.select(types);
+        if (index == -1) return OTHER_TYPE;
+        // A known name followed by more characters is some other event
+        return typeLengths[index] == rest ? index : OTHER_TYPE;
+    }
+
+    private int append(byte b, int length) {
+        ensureCapacity(length + 1);
+        data[length] = b;
+        return length + 1;
+    }
+
+    private int append(Buffer buffer, int count, int length) {
+        ensureCapacity(length + count);
+        int read = 0;
+        while (read < count) {
+            int n = buffer.read(data, length + read, count - read);
+            if (n <= 0) break;
+            read += n;
+        }
+        return length + read;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > data.length) data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+    }
+}
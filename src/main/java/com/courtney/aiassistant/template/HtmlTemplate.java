@@ -25,6 +25,7 @@ public class HtmlTemplate {
                 .msg.user { background: linear-gradient(180deg, var(--user), rgba(30,41,59,0.6)); }
                 .msg.assistant { background: linear-gradient(180deg, var(--assistant), rgba(11,19,43,0.7)); }
                 .msg .role { font-size: 12px; color: var(--muted); margin-bottom: 8px; }
+                .msg.stopped { opacity: 0.8; }
                 .msg .content { font-size: 16.5px; }
                 .msg .content p { margin: 8px 0; }
                 .msg .content h1, .msg .content h2, .msg .content h3, .msg .content h4, .msg .content h5, .msg .content h6 {
@@ -59,6 +60,12 @@ public class HtmlTemplate {
                 let lastRenderTime = 0;
                 const RENDER_INTERVAL_MS = 75; // throttle to avoid flicker
 
+                // Paging state: older turns are requested from Java when scrolled to the top
+                let hasOlder = false;
+                let loadingOlder = false;
+                let prependAnchor = null;
+                let prependScrollHeight = 0;
+
                 function escHtml(s) {
                   if (s == null) return "";
                   return s.replace(/&/g,"&amp;").replace(/</g,"&lt;").replace(/>/g,"&gt;");
@@ -169,7 +176,12 @@ public class HtmlTemplate {
                   }
                 }
 
-                function addMessage(role, text) {
+                function addMessage(role, text, stopped) {
+                  container.appendChild(buildMessage(role, text, stopped));
+                  //window.scrollTo(0, document.body.scrollHeight);
+                }
+
+                function buildMessage(role, text, stopped) {
                   const wrap = document.createElement('div');
                   wrap.className = 'msg ' + role;
 
@@ -190,12 +202,40 @@ public class HtmlTemplate {
                   }
 
                   wrap.appendChild(r); wrap.appendChild(c);
-                  container.appendChild(wrap);
-                  //window.scrollTo(0, document.body.scrollHeight);
+                  if (stopped) markStopped(wrap);
+                  return wrap;
+                }
+
+                function beginPrepend() {
+                  prependAnchor = container.firstChild;
+                  prependScrollHeight = document.body.scrollHeight;
                 }
+                function prependMessage(role, text, stopped) {
+                  container.insertBefore(buildMessage(role, text, stopped), prependAnchor);
+                }
+                function endPrepend() {
+                  // Keep the message the user was looking at in place
+                  window.scrollTo(0, window.scrollY + document.body.scrollHeight - prependScrollHeight);
+                  prependAnchor = null;
+                }
+                function setHasOlder(v) { hasOlder = v; loadingOlder = false; }
 
                 function addUserMessage(text){ addMessage('user', text); window.scrollTo(10, document.body.scrollHeight);}
-                function addAssistantMessage(text){ addMessage('assistant', text); }
+                function addAssistantMessage(text, stopped){ addMessage('assistant', text, stopped); }
+
+                // Replies cut short by the Stop action
+                function markStopped(wrap) {
+                  wrap.classList.add('stopped');
+                  const r = wrap.querySelector('.role');
+                  if (r) r.textContent = 'Assistant (stopped)';
+                }
+                function stopAssistantMessage() {
+                  if (!assistantCurrentEl) return;
+                  const wrap = assistantCurrentEl.parentNode;
+                  const empty = assistantCurrentBuffer === "";
+                  endAssistantMessage();
+                  if (empty) wrap.remove(); else markStopped(wrap);
+                }
                 function clearMessages(){ container.innerHTML = ''; }
 
                 // Streaming helpers (formatted during stream)
@@ -247,6 +287,12 @@ public class HtmlTemplate {
                 }
 
                 window.addEventListener('DOMContentLoaded', () => { container = document.querySelector('.container'); });
+                window.addEventListener('scroll', () => {
+                  if (hasOlder && !loadingOlder && window.scrollY <= 0 && typeof app !== "undefined") {
+                    loadingOlder = true;
+                    app.loadOlder();
+                  }
+                });
                 """;
 
         return """
@@ -0,0 +1,126 @@
+package com.courtney.aiassistant.ui;
+
+import com.courtney.aiassistant.controller.ConversationController;
+import com.courtney.aiassistant.template.JsUtil;
+import javafx.application.Platform;
+import javafx.scene.control.Tab;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One chat session: its own conversation, reply stream and web view. Page updates are queued
+// from any thread and run on the FX thread only while the tab is on screen, so a session
+// streaming in the background just buffers its text and renders it in one go when selected.
+class ChatTab {
+
+    private final Tab tab;
+    private final WebView webView;
+    private final ConversationController conversation;
+
+    // Guarded by this: scripts waiting for the page, and text streamed since the last of them
+    private final List<String> pending = new ArrayList<>();
+    private final StringBuilder deltas = new StringBuilder();
+    private boolean drainScheduled;
+    private volatile boolean shown;
+
+    // FX thread only
+    private boolean streaming;
+    private String status = "Ready";
+    private int trimmedMessages;
+    private int trimmedTokens;
+
+    ChatTab(WebView webView, ConversationController conversation) {
+        this.webView = webView;
+        this.conversation = conversation;
+        this.tab = new Tab(conversation.currentTitle(), webView);
+        tab.setUserData(this);
+    }
+
+    static ChatTab of(Tab tab) {
+        return tab == null ? null : (ChatTab) tab.getUserData();
+    }
+
+    Tab tab() { return tab; }
+    WebEngine engine() { return webView.getEngine(); }
+    ConversationController conversation() { return conversation; }
+    boolean isStreaming() { return streaming; }
+    String status() { return status; }
+    void setStatus(String status) { this.status = status; }
+    int trimmedMessages() { return trimmedMessages; }
+    int trimmedTokens() { return trimmedTokens; }
+
+    // What the last request left out of the conversation
+    void setTrimmed(int messages, int tokens) {
+        this.trimmedMessages = messages;
+        this.trimmedTokens = tokens;
+    }
+
+    void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        refreshTitle();
+    }
+
+    void refreshTitle() {
+        String title = conversation.currentTitle();
+        tab.setText((streaming ? "● " : "") + (title == null || title.isBlank() ? "Conversation" : title));
+    }
+
+    // Queues a call into the page; runs after everything queued before it
+    void script(String js) {
+        synchronized (this) {
+            takeDeltas();
+            pending.add(js);
+        }
+        scheduleDrain();
+    }
+
+    // Streamed text; consecutive deltas are handed to the page as one appendAssistant call
+    void delta(String text) {
+        synchronized (this) {
+            deltas.append(text);
+        }
+        scheduleDrain();
+    }
+
+    // Queued updates belong to the page being replaced, e.g. before it is reloaded
+    synchronized void discardPending() {
+        pending.clear();
+        deltas.setLength(0);
+    }
+
+    // FX thread: called as the tab is selected or deselected
+    void setShown(boolean shown) {
+        this.shown = shown;
+        if (shown) drain();
+    }
+
+    private void scheduleDrain() {
+        if (!shown) return;
+        synchronized (this) {
+            if (drainScheduled) return;
+            drainScheduled = true;
+        }
+        Platform.runLater(this::drain);
+    }
+
+    private void drain() {
+        List<String> scripts;
+        synchronized (this) {
+            drainScheduled = false;
+            takeDeltas();
+            if (pending.isEmpty()) return;
+            scripts = new ArrayList<>(pending);
+            pending.clear();
+        }
+        WebEngine engine = webView.getEngine();
+        for (String js : scripts) engine.executeScript(js);
+    }
+
+    private void takeDeltas() {
+        if (deltas.length() == 0) return;
+        pending.add("appendAssistant(" + JsUtil.toJsString(deltas.toString()) + ");");
+        deltas.setLength(0);
+    }
+}
@@ -1,5 +1,6 @@
 package com.courtney.aiassistant.ui;
 
+import com.courtney.aiassistant.controller.ConversationController;
 import javafx.concurrent.Worker;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -15,30 +16,38 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.*;
-import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import javafx.stage.Stage;
 import netscape.javascript.JSObject;
 
 import java.io.IOException;
+import java.util.List;
 
 public class ClientApp extends BorderPane {
 
     private final MenuItem miNewConversation = new MenuItem("New Conversation");
+    private final MenuItem miNewTab = new MenuItem("New Tab");
+    private final MenuItem miCloseTab = new MenuItem("Close Tab");
     private final MenuItem miOpenConversation = new MenuItem("Open Conversation");
     private final MenuItem miSaveConversation = new MenuItem("Save Conversation");
     private final MenuItem miSaveHtml = new MenuItem("Save View as HTML");
+    private final MenuItem miExportArchive = new MenuItem("Export Archive...");
+    private final MenuItem miImportArchive = new MenuItem("Import Archive...");
+    private final MenuItem miImportChatGpt = new MenuItem("Import ChatGPT Export...");
     private final MenuItem miExit = new MenuItem("Exit");
 
     private final MenuItem miConfig = new MenuItem("Configuration Settings");
     private final MenuItem miBrowseConversations = new MenuItem("Conversation Manager");
+    private final MenuItem miConvertStorage = new MenuItem("Convert Conversation Files");
+    private final MenuItem miClearResponseCache = new MenuItem("Clear Response Cache");
 
     private final MenuItem miAssistant = new MenuItem("Assistant");
     private final MenuItem miDictionary = new MenuItem("Deutsch");
     private final MenuItem miHealthcare = new MenuItem("Healthcare");
     private final MenuItem miProgrammer = new MenuItem("Programmer");
     private final TextArea inputArea = new TextArea();
-    private final WebView webView = new WebView();
+    private final Button stopButton = new Button("Stop");
+    private final TabPane tabs = new TabPane();
     private final Label statusLeft = new Label("Ready");
     private final Label statusRight = new Label("");
 
@@ -54,10 +63,11 @@ public class ClientApp extends BorderPane {
 
     private MenuBar buildMenu() {
         Menu file = new Menu("File");
-        file.getItems().addAll(miNewConversation, miOpenConversation, miSaveConversation, miSaveHtml, new SeparatorMenuItem(), miExit);
+        file.getItems().addAll(miNewConversation, miNewTab, miCloseTab, new SeparatorMenuItem(), miOpenConversation, miSaveConversation, miSaveHtml, new SeparatorMenuItem(),
+                miExportArchive, miImportArchive, miImportChatGpt, new SeparatorMenuItem(), miExit);
 
         Menu tools = new Menu("Tools");
-        tools.getItems().addAll(miConfig, miBrowseConversations);
+        tools.getItems().addAll(miConfig, miBrowseConversations, miConvertStorage, miClearResponseCache);
 
         Menu presets = new Menu("Presets");
         presets.getItems().addAll(miAssistant,miDictionary, miHealthcare,miProgrammer);
@@ -113,7 +123,14 @@ public class ClientApp extends BorderPane {
         alert.showAndWait();
     }
 
+    // One tab per chat session; each session renders into its own web view
     private Node buildCenter() {
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.ALL_TABS);
+        return tabs;
+    }
+
+    private WebView buildChatView() {
+        WebView webView = new WebView();
         webView.setContextMenuEnabled(false);
         webView.getEngine().setJavaScriptEnabled(true);
         VBox.setVgrow(webView, Priority.ALWAYS);
@@ -157,6 +174,10 @@ public class ClientApp extends BorderPane {
                     inputArea.appendText(System.lineSeparator());
                     // Consume event to prevent sending the message
                     event.consume();
+                } else if (event.isShiftDown()) {
+                    // Shift+Enter sends to the API even if the reply is cached
+                    controller.sendMessage(true);
+                    event.consume();
                 } else {
                     // Send message if Enter is pressed without Ctrl
                     controller.sendMessage(); // Call sendMessage on the controller
@@ -165,7 +186,11 @@ public class ClientApp extends BorderPane {
             }
         });
 
-        HBox inputBar = new HBox(8, inputArea);
+        // Enabled only while a reply is streaming; Escape does the same
+        stopButton.setDisable(true);
+        stopButton.setTooltip(new Tooltip("Stop generating (Esc)"));
+
+        HBox inputBar = new HBox(8, inputArea, stopButton);
         HBox.setHgrow(inputArea, Priority.ALWAYS);
         inputBar.setPadding(new Insets(10));
         inputBar.setAlignment(Pos.CENTER_RIGHT);
@@ -193,15 +218,33 @@ public class ClientApp extends BorderPane {
 
     // Expose components
 
-    public WebEngine getEngine() { return webView.getEngine(); }
+    // Adds a tab for the session and brings it to the front
+    ChatTab addChatTab(ConversationController conversation) {
+        ChatTab chat = new ChatTab(buildChatView(), conversation);
+        tabs.getTabs().add(chat.tab());
+        tabs.getSelectionModel().select(chat.tab());
+        return chat;
+    }
+
+    ChatTab selectedChat() { return ChatTab.of(tabs.getSelectionModel().getSelectedItem()); }
+    List<ChatTab> chats() { return tabs.getTabs().stream().map(ChatTab::of).toList(); }
+    TabPane getTabs() { return tabs; }
     public TextArea getInputArea() { return inputArea; }
+    public Button getStopButton() { return stopButton; }
     public MenuItem getMiNewConversation() { return miNewConversation; }
+    public MenuItem getMiNewTab() { return miNewTab; }
+    public MenuItem getMiCloseTab() { return miCloseTab; }
     public MenuItem getMiOpenConversation() { return miOpenConversation; }
     public MenuItem getMiSaveConversation() { return miSaveConversation; }
     public MenuItem getMiSaveHtml() { return miSaveHtml; }
+    public MenuItem getMiExportArchive() { return miExportArchive; }
+    public MenuItem getMiImportArchive() { return miImportArchive; }
+    public MenuItem getMiImportChatGpt() { return miImportChatGpt; }
     public MenuItem getMiExit() { return miExit; }
     public MenuItem getMiConfig() { return miConfig; }
     public MenuItem getMiBrowseConversations() { return miBrowseConversations; }
+    public MenuItem getMiConvertStorage() { return miConvertStorage; }
+    public MenuItem getMiClearResponseCache() { return miClearResponseCache; }
     public MenuItem getMiAssistant() { return miAssistant; }
     public MenuItem getMiDictionary() { return miDictionary; }
     public MenuItem getMiHealthcare() { return miHealthcare; }
@@ -211,6 +254,11 @@ public class ClientApp extends BorderPane {
     public void focusInputArea() { inputArea.requestFocus(); }
 
     public class LinkHandler {
+        // Called from the page when the user scrolls to the top of a partially loaded conversation
+        public void loadOlder() {
+            controller.loadOlderMessages();
+        }
+
         public void openLink(String adr) throws IOException {
             String os = System.getProperty("os.name").toLowerCase();
             try {
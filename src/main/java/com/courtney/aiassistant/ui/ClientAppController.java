@@ -5,10 +5,19 @@ import com.courtney.aiassistant.controller.ConversationController;
 import com.courtney.aiassistant.controller.Presets;
 import com.courtney.aiassistant.exception.ApiException;
 import com.courtney.aiassistant.model.AppSettings;
-import com.courtney.aiassistant.model.Conversation;
+import com.courtney.aiassistant.model.ConversationSummary;
 import com.courtney.aiassistant.service.ApiService;
+import com.courtney.aiassistant.service.ArchiveService;
+import com.courtney.aiassistant.service.AsyncConversationStore;
+import com.courtney.aiassistant.service.AutosaveService;
+import com.courtney.aiassistant.service.ChatGptImporter;
+import com.courtney.aiassistant.service.ConversationCodec;
 import com.courtney.aiassistant.service.ConfigService;
 import com.courtney.aiassistant.service.ConversationRepository;
+import com.courtney.aiassistant.service.ConversationStore;
+import com.courtney.aiassistant.service.ResponseCache;
+import com.courtney.aiassistant.service.SqlConversationStore;
+import com.courtney.aiassistant.util.FileManager;
 import com.courtney.aiassistant.template.HtmlTemplate;
 import com.courtney.aiassistant.util.ErrorHandler;
 
@@ -23,7 +32,9 @@ import javafx.stage.Stage;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 public class ClientAppController {
 
@@ -32,11 +43,13 @@ public class ClientAppController {
     private Presets presets;
 
     private ConfigService configService;
-    private ConversationRepository conversationRepository;
+    private ConversationStore conversationRepository;
+    private AsyncConversationStore asyncRepository;
     private ApiService apiService;
+    private AutosaveService autosaveService;
+    private ResponseCache responseCache;
     private AppSettings settings;
 
-    private ConversationController conversationController;
     private ConfigController configController;
 
     public void start(Stage stage) {
@@ -44,12 +57,16 @@ public class ClientAppController {
 
         // Services
         configService = new ConfigService();
-        conversationRepository = new ConversationRepository();
+        conversationRepository = openStore(configService.getSettings());
         apiService = new ApiService();
+        apiService.setMaxConcurrentStreams(configService.getSettings().getMaxConcurrentStreams());
+        responseCache = new ResponseCache(FileManager.appDir().resolve("cache").resolve("responses"));
+        apiService.setResponseCache(responseCache);
+        asyncRepository = new AsyncConversationStore(conversationRepository);
+        autosaveService = new AutosaveService(conversationRepository);
 
         // Controllers
         configController = new ConfigController(configService);
-        conversationController = new ConversationController(apiService, conversationRepository, configService);
 
         // UI
         view = new ClientApp(this); // Pass the controller instance to the view
@@ -58,8 +75,8 @@ public class ClientAppController {
 
         presets = new Presets(configService, stage);
 
-        initWebView();
         bindActions();
+        newTab();
         applyStatus();
 
         settings = configService.getSettings();
@@ -85,20 +102,110 @@ public class ClientAppController {
         view.focusInputArea();
         stage.show();
     }
-    private void initWebView() {
+    // "sql" selects the embedded database; anything else is the file-based repository. The first
+    // time the database is used it is filled from the existing conversation files, which stay put.
+    private static ConversationStore openStore(AppSettings s) {
+        ConversationCodec codec = ConversationCodec.forName(s.getStorageFormat());
+        if (!"sql".equalsIgnoreCase(s.getStorageEngine())) {
+            ConversationRepository files = new ConversationRepository(s.getStorageEngine(), codec);
+            files.setRetentionDays(s.getRetentionDays());
+            return files;
+        }
+        SqlConversationStore sql = new SqlConversationStore(FileManager.appDir().resolve("db"));
+        if (sql.isEmpty()) {
+            ConversationRepository files = new ConversationRepository("files", codec);
+            try {
+                sql.importFrom(files);
+            } finally {
+                files.close();
+            }
+        }
+        return sql;
+    }
+
+    // Called once when the application exits
+    public void shutdown() {
+        if (autosaveService != null) autosaveService.close();
+        if (asyncRepository != null) asyncRepository.close();
+        if (responseCache != null) responseCache.close();
+        if (conversationRepository != null) conversationRepository.close();
+    }
+
+    private void initWebView(ChatTab chat) {
         String baseHtml = HtmlTemplate.baseHtml(configService.getSettings());
-        view.getEngine().loadContent(baseHtml, "text/html");
+        chat.discardPending();
+        chat.engine().loadContent(baseHtml, "text/html");
         view.focusInputArea();
     }
 
+    private ChatTab session() {
+        return view.selectedChat();
+    }
+
+    // A fresh conversation in a tab of its own
+    private ChatTab newTab() {
+        ChatTab chat = view.addChatTab(new ConversationController(apiService, conversationRepository, configService, autosaveService,
+                asyncRepository.executor()));
+        // A closed tab's reply is stopped; what arrived so far is kept like any stopped reply
+        chat.tab().setOnClosed(e -> {
+            chat.conversation().stopStreaming();
+            if (view.getTabs().getTabs().isEmpty()) newTab();
+        });
+        initWebView(chat);
+        return chat;
+    }
+
+    // The selected tab, unless its reply is still streaming: then the conversation goes in a new tab
+    private ChatTab idleSession() {
+        ChatTab chat = session();
+        return chat.isStreaming() ? newTab() : chat;
+    }
+
+    private void closeTab() {
+        ChatTab chat = session();
+        view.getTabs().getTabs().remove(chat.tab());
+        chat.conversation().stopStreaming();
+        if (view.getTabs().getTabs().isEmpty()) newTab();
+    }
+
+    // Status bar and Stop button show the selected tab's session
+    private void showSession(ChatTab chat) {
+        view.getStatusLeft().setText(chat.status());
+        view.getStopButton().setDisable(!chat.isStreaming());
+    }
+
+    // FX thread
+    private void setStatus(ChatTab chat, String status) {
+        chat.setStatus(status);
+        if (chat == session()) view.getStatusLeft().setText(status);
+    }
+
+    // FX thread: the session's turn is over, however it ended
+    private void finishTurn(ChatTab chat, String status) {
+        chat.setStreaming(false);
+        setStatus(chat, status);
+        if (chat == session()) view.getStopButton().setDisable(true);
+    }
+
     private void bindActions() {
         view.getMiNewConversation().setOnAction(e -> newConversation());
+        view.getMiNewTab().setOnAction(e -> newTab());
+        view.getMiCloseTab().setOnAction(e -> closeTab());
         view.getMiOpenConversation().setOnAction(e -> openConversationBrowser());
         view.getMiSaveConversation().setOnAction(e -> saveConversationAsJson());
         view.getMiSaveHtml().setOnAction(e -> saveViewAsHtml());
+        view.getMiExportArchive().setOnAction(e -> exportArchive());
+        view.getMiImportArchive().setOnAction(e -> importArchive());
+        view.getMiImportChatGpt().setOnAction(e -> importChatGpt());
+        view.getStopButton().setOnAction(e -> stopStreaming());
         view.getMiExit().setOnAction(e -> stage.close());
         view.getMiConfig().setOnAction(e -> openConfigDialog());
         view.getMiBrowseConversations().setOnAction(e -> openConversationBrowser());
+        view.getMiConvertStorage().setOnAction(e -> convertStorage());
+        view.getMiClearResponseCache().setOnAction(e -> runInBackground("response-cache-clear", "Clear Cache", () -> {
+            responseCache.clear();
+            return "Cached replies removed.";
+        }));
         view.getMiAssistant().setOnAction(e -> presets.setAssistantMode());
         view.getMiDictionary().setOnAction(e -> presets.setDictionaryMode());
         view.getMiHealthcare().setOnAction(e -> presets.setMedicalMode());
@@ -109,68 +216,119 @@ public class ClientAppController {
                 new KeyCodeCombination(KeyCode.ENTER, KeyCombination.CONTROL_DOWN),
                 this::sendMessage
         );
+        stage.getScene().getAccelerators().put(new KeyCodeCombination(KeyCode.ESCAPE), this::stopStreaming);
+        stage.getScene().getAccelerators().put(new KeyCodeCombination(KeyCode.T, KeyCombination.CONTROL_DOWN), this::newTab);
+        stage.getScene().getAccelerators().put(new KeyCodeCombination(KeyCode.W, KeyCombination.CONTROL_DOWN), this::closeTab);
+
+        // Only the selected tab renders; the others buffer until they are brought forward
+        view.getTabs().getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            ChatTab previous = ChatTab.of(oldTab);
+            ChatTab chat = ChatTab.of(newTab);
+            if (previous != null) previous.setShown(false);
+            if (chat != null) {
+                chat.setShown(true);
+                showSession(chat);
+            }
+        });
 
         // Update right status when settings change
-        configService.settingsProperty().addListener((obs, oldV, newV) -> applyStatus());
+        configService.settingsProperty().addListener((obs, oldV, newV) -> {
+            applyStatus();
+            apiService.setMaxConcurrentStreams(newV.getMaxConcurrentStreams());
+            if (conversationRepository instanceof ConversationRepository files) {
+                files.setCodec(ConversationCodec.forName(newV.getStorageFormat()));
+                files.setRetentionDays(newV.getRetentionDays());
+            }
+        });
     }
 
     private void applyStatus() {
         AppSettings s = configService.getSettings();
-        view.getStatusLeft().setText("Ready");
+        ChatTab chat = session();
+        view.getStatusLeft().setText(chat != null ? chat.status() : "Ready");
         view.getStatusRight().setText("Mode: " + s.getMode() + "   Model: " + s.getModel() + "   Temp: " + String.format("%.2f", s.getTemperature()));
     }
 
     private void newConversation() {
-        conversationController.newConversation();
-        initWebView();
+        ChatTab chat = idleSession();
+        chat.conversation().newConversation();
+        chat.refreshTitle();
+        initWebView(chat);
     }
 
     public void sendMessage() {
+        sendMessage(false);
+    }
+
+    // refresh bypasses the response cache and replaces what it holds for this request
+    public void sendMessage(boolean refresh) {
         final String prompt = view.getInputArea().getText().trim();
 
         if (prompt.isEmpty()) return;
 
+        // Each session streams one reply at a time; other tabs can be used meanwhile
+        final ChatTab chat = session();
+        if (chat.isStreaming()) return;
+
         view.getInputArea().clear();
 
         // Add user message to HTML
-        Platform.runLater(() ->
-                view.getEngine().executeScript("addUserMessage(" + toJsArg(prompt) + ");"));
-        Platform.runLater(() -> view.getStatusLeft().setText("Thinking..."));
-        // Start streaming
-        try {
-            conversationController.streamCompletion(
-                    prompt,
-                    onStart -> {
-                        Platform.runLater(() ->
-                                view.getEngine().executeScript("beginAssistantMessage();"));
-                        Platform.runLater(() -> view.getStatusLeft().setText("Responding..."));
-                    },
-                    delta -> {
-                        // Append streamed tokens without flicker: DOM append of text nodes
-                        Platform.runLater(() ->
-                                view.getEngine().executeScript("appendAssistant(" + toJsArg(delta) + ");"));
-                    },
-                    finishText -> {
-                        Platform.runLater(() -> {
-                            view.getEngine().executeScript("endAssistantMessage();");
-                            view.getStatusLeft().setText("Ready");
-                        });
-                    },
-                    err -> {
-                        Platform.runLater(() -> {
-                            view.getEngine().executeScript("endAssistantMessage();");
-                            view.getStatusLeft().setText("Ready");
-                            ErrorHandler.alert("API Error", err.getMessage(), Alert.AlertType.ERROR);
-                        });
-                    }
-            );
-        } catch (ApiException ex) {
-            ErrorHandler.alert("Configuration Error", ex.getMessage(), Alert.AlertType.ERROR);
-        }
+        chat.script("addUserMessage(" + toJsArg(prompt) + ");");
+        chat.setStreaming(true);
+        setStatus(chat, "Thinking...");
+        view.getStopButton().setDisable(false);
+        // Start streaming once the history is in memory; the tab renders the reply only while it is selected
+        chat.conversation().streamCompletion(
+                prompt,
+                refresh,
+                onStart -> {
+                    chat.script("beginAssistantMessage();");
+                    Platform.runLater(() -> setStatus(chat, "Responding..." + trimmedNote(chat)));
+                },
+                chat::delta,
+                completion -> {
+                    chat.script("endAssistantMessage();");
+                    Platform.runLater(() -> finishTurn(chat, completion.cached()
+                            ? "Ready (cached reply, Shift+Enter to ask again)" : "Ready"));
+                },
+                err -> {
+                    // Kept as an incomplete reply, like a stopped one
+                    chat.script("stopAssistantMessage();");
+                    Platform.runLater(() -> {
+                        finishTurn(chat, "Ready");
+                        ErrorHandler.alert("API Error", err.getMessage(), Alert.AlertType.ERROR);
+                    });
+                }
+        ).whenCompleteAsync((context, err) -> {
+            if (err == null) {
+                chat.setTrimmed(context.trimmedMessages(), context.trimmedTokens());
+                setStatus(chat, "Thinking..." + trimmedNote(chat));
+                return;
+            }
+            Throwable cause = err.getCause() != null ? err.getCause() : err;
+            finishTurn(chat, "Ready");
+            ErrorHandler.alert(cause instanceof ApiException ? "Configuration Error" : "Load Error",
+                    cause.getMessage(), Alert.AlertType.ERROR);
+        }, Platform::runLater);
+    }
+
+    // Older turns left out of the request to stay within the model's context budget
+    private static String trimmedNote(ChatTab chat) {
+        if (chat.trimmedMessages() == 0) return "";
+        return "  (" + chat.trimmedMessages() + " earlier message(s), ~" + chat.trimmedTokens() + " tokens not sent)";
+    }
+
+    // Stop button and Escape: the partial reply stays on screen and in the conversation, marked as stopped
+    private void stopStreaming() {
+        ChatTab chat = session();
+        if (!chat.conversation().stopStreaming()) return;
+        chat.script("stopAssistantMessage();");
+        finishTurn(chat, "Stopped");
     }
     private void saveViewAsHtml() {
         try {
-            Object htmlObj = view.getEngine().executeScript("document.documentElement.outerHTML");
+            ChatTab chat = session();
+            Object htmlObj = chat.engine().executeScript("document.documentElement.outerHTML");
             String html = String.valueOf(htmlObj);
             FileChooser chooser = new FileChooser();
             chooser.setTitle("Save HTML");
@@ -180,8 +338,15 @@ public class ClientAppController {
             chooser.setInitialFileName("conversation.html");
             File file = chooser.showSaveDialog(stage);
             if (file != null) {
-                conversationController.saveHtml(html.getBytes(StandardCharsets.UTF_8), file.toPath());
-                ErrorHandler.toast("Saved", "HTML saved successfully.");
+                asyncRepository.run(() -> chat.conversation().saveHtml(html.getBytes(StandardCharsets.UTF_8), file.toPath()))
+                        .whenComplete((v, err) -> {
+                            if (err == null) {
+                                ErrorHandler.toast("Saved", "HTML saved successfully.");
+                            } else {
+                                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                                ErrorHandler.alert("Save Error", cause.getMessage(), Alert.AlertType.ERROR);
+                            }
+                        });
             }
         } catch (Exception ex) {
             ErrorHandler.alert("Save Error", ex.getMessage(), Alert.AlertType.ERROR);
@@ -190,6 +355,7 @@ public class ClientAppController {
 
     private void saveConversationAsJson() {
         try {
+            ConversationController conversation = session().conversation();
             FileChooser chooser = new FileChooser();
             chooser.setTitle("Save Conversation (JSON)");
             // Get the user's home directory
@@ -211,11 +377,18 @@ public class ClientAppController {
 
             //chooser.setInitialDirectory(new File("/home/dean/.aiassistant/conversations"));
             chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON Files", "*.json"));
-            chooser.setInitialFileName(conversationController.currentConversationSuggestedFileName());
+            chooser.setInitialFileName(conversation.currentConversationSuggestedFileName());
             File file = chooser.showSaveDialog(stage);
             if (file != null) {
-                conversationController.saveConversation(file.toPath());
-                ErrorHandler.toast("Conversation Saved", "Conversation saved successfully.");
+                // Paging in the rest of a lazily opened conversation happens on the I/O pool first
+                conversation.saveConversation(file.toPath()).whenComplete((v, err) -> {
+                    if (err == null) {
+                        ErrorHandler.toast("Conversation Saved", "Conversation saved successfully.");
+                    } else {
+                        Throwable cause = err.getCause() != null ? err.getCause() : err;
+                        ErrorHandler.alert("Save Error", cause.getMessage(), Alert.AlertType.ERROR);
+                    }
+                });
             }
         } catch (Exception ex) {
             ErrorHandler.alert("Save Error", ex.getMessage(), Alert.AlertType.ERROR);
@@ -228,23 +401,144 @@ public class ClientAppController {
         updated.ifPresent(settings -> {
             configController.save(settings);
             applyStatus();
-            // Re-render base HTML to apply possible style changes dependent on settings or reset streaming state
-            initWebView();
-            // Re-display the current conversation after HTML reload
-            conversationController.renderCurrentConversationTo(view.getEngine());
+            // Re-render base HTML to apply possible style changes dependent on settings; a tab
+            // that is still streaming keeps its page until the reply is done
+            for (ChatTab chat : view.chats()) {
+                if (chat.isStreaming()) continue;
+                initWebView(chat);
+                // Re-display the conversation after HTML reload
+                render(chat);
+            }
         });
     }
 
     private void openConversationBrowser() {
-        ConversationManager cm = new ConversationManager(stage, conversationController, conversationRepository);
-        Optional<Conversation> chosen = cm.showAndWait();
-        chosen.ifPresent(conv -> {
-            conversationController.setCurrentConversation(conv);
-            initWebView();
-            conversationController.renderCurrentConversationTo(view.getEngine());
+        ConversationManager cm = new ConversationManager(stage, session().conversation(), asyncRepository);
+        Optional<ConversationSummary> chosen = cm.showAndWait();
+        // Opening scans the snapshot (and may rehydrate it from the archive) off the FX thread
+        chosen.ifPresent(summary -> {
+            // A conversation already open in a tab is brought forward rather than opened twice
+            for (ChatTab chat : view.chats()) {
+                if (summary.getId() != null && summary.getId().equals(chat.conversation().currentId())) {
+                    view.getTabs().getSelectionModel().select(chat.tab());
+                    return;
+                }
+            }
+            view.getStatusLeft().setText("Opening...");
+            asyncRepository.openHandle(summary).whenComplete((handle, err) -> Platform.runLater(() -> {
+                view.getStatusLeft().setText("Ready");
+                if (err != null) {
+                    Throwable cause = err.getCause() != null ? err.getCause() : err;
+                    ErrorHandler.alert("Open Error", cause.getMessage(), Alert.AlertType.ERROR);
+                    return;
+                }
+                ChatTab chat = idleSession();
+                chat.conversation().openConversation(handle);
+                chat.refreshTitle();
+                initWebView(chat);
+                render(chat);
+            }));
+        });
+    }
+
+    private void exportArchive() {
+        FileChooser chooser = archiveChooser("Export Archive");
+        chooser.setInitialFileName("conversations-" + LocalDate.now() + ".jsonl.gz");
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) return;
+        runInBackground("archive-export", "Export", () -> {
+            int n = new ArchiveService(conversationRepository).exportTo(file.toPath(), this::showProgress);
+            return n + " conversation(s) exported.";
+        });
+    }
+
+    private void importArchive() {
+        File file = archiveChooser("Import Archive").showOpenDialog(stage);
+        if (file == null) return;
+        runInBackground("archive-import", "Import", () -> {
+            ArchiveService.ImportResult r = new ArchiveService(conversationRepository).importFrom(file.toPath(), this::showProgress);
+            return r.imported() + " conversation(s) imported, " + r.skipped() + " already present.";
         });
     }
 
+    // Picks up where an interrupted import of the same file stopped
+    private void importChatGpt() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import ChatGPT Export");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("ChatGPT Export", "conversations.json", "*.json"));
+        chooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) return;
+        runInBackground("chatgpt-import", "Import", () -> {
+            ChatGptImporter.ImportResult r = new ChatGptImporter(conversationRepository).importFrom(file.toPath(), this::showProgress);
+            return r.imported() + " conversation(s) imported, " + r.skipped() + " empty."
+                    + (r.resumedAt() > 0 ? " Resumed after " + r.resumedAt() + " already imported." : "");
+        });
+    }
+
+    private FileChooser archiveChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Conversation Archives", "*.jsonl.gz", "*.gz"));
+        chooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        return chooser;
+    }
+
+    private void showProgress(int count) {
+        if (count % 100 == 0) Platform.runLater(() -> view.getStatusLeft().setText(count + " conversation(s)..."));
+    }
+
+    private void runInBackground(String threadName, String what, Callable<String> task) {
+        view.getStatusLeft().setText(what + " in progress...");
+        Thread t = new Thread(() -> {
+            try {
+                String message = task.call();
+                Platform.runLater(() -> {
+                    view.getStatusLeft().setText("Ready");
+                    ErrorHandler.toast(what + " Complete", message);
+                });
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    view.getStatusLeft().setText("Ready");
+                    ErrorHandler.alert(what + " Error", ex.getMessage(), Alert.AlertType.ERROR);
+                });
+            }
+        }, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Rewrites stored conversations into the configured storage format off the FX thread; pending
+    // autosaves are flushed first so none of them is converted from an older copy
+    private void convertStorage() {
+        if (!(conversationRepository instanceof ConversationRepository files)) {
+            ErrorHandler.toast("Nothing to Convert", "Conversations are stored in the database.");
+            return;
+        }
+        ConversationCodec target = ConversationCodec.forName(configService.getSettings().getStorageFormat());
+        runInBackground("storage-convert", "Conversion", () ->
+                files.convertAll(target, autosaveService::flush) + " conversation(s) converted to " + target.name() + ".");
+    }
+
+    public void loadOlderMessages() {
+        ChatTab chat = session();
+        chat.conversation().renderOlderTo(chat.engine()).whenComplete((v, err) -> {
+            if (err != null) loadError(err);
+        });
+    }
+
+    // Pages are read off the FX thread; the page is filled in when they arrive
+    private void render(ChatTab chat) {
+        chat.conversation().renderCurrentConversationTo(chat.engine()).whenComplete((v, err) -> {
+            if (err != null) loadError(err);
+        });
+    }
+
+    private static void loadError(Throwable err) {
+        Throwable cause = err.getCause() != null ? err.getCause() : err;
+        ErrorHandler.alert("Load Error", cause.getMessage(), Alert.AlertType.ERROR);
+    }
+
     private static String toJsArg(String s) {
         if (s == null) return "''";
         String esc = s
@@ -1,9 +1,12 @@
 package com.courtney.aiassistant.ui;
 
 import com.courtney.aiassistant.controller.ConversationController;
-import com.courtney.aiassistant.model.Conversation;
-import com.courtney.aiassistant.service.ConversationRepository;
+import com.courtney.aiassistant.model.ConversationSummary;
+import com.courtney.aiassistant.model.SearchHit;
+import com.courtney.aiassistant.service.AsyncConversationStore;
+import com.courtney.aiassistant.service.ConversationIndex;
 import com.courtney.aiassistant.util.ErrorHandler;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -11,23 +14,45 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class ConversationManager {
 
+    private static final int SEARCH_LIMIT = 200;
+    private static final long SEARCH_DELAY_MILLIS = 150;
+
     private final Stage stage = new Stage();
-    private final ListView<Conversation> listView = new ListView<>();
-    private final ConversationRepository repository;
+    private final ListView<SearchHit> listView = new ListView<>();
+    private final TextField searchField = new TextField();
+    private final Label status = new Label();
+    private final AsyncConversationStore repository;
+
+    private List<ConversationSummary> summaries = new ArrayList<>();
+    // Bumped by every refresh so a superseded scan stops touching the list
+    private int generation = 0;
+    // The full-text search behind the current query; replaced (and cancelled) on every keystroke
+    private CompletableFuture<List<SearchHit>> search;
+    private final Runnable onExternalChange = () -> Platform.runLater(this::refresh);
 
-    private Conversation chosen;
+    private ConversationSummary chosen;
 
-    public ConversationManager(Stage owner, ConversationController controller, ConversationRepository repository) {
+    public ConversationManager(Stage owner, ConversationController controller, AsyncConversationStore repository) {
         this.repository = repository;
 
         stage.initOwner(owner);
@@ -37,7 +62,6 @@ public class ConversationManager {
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(10));
 
-        TextField searchField = new TextField();
         searchField.setPrefColumnCount(40);
         searchField.setPromptText("Search conversations ...");
 
@@ -48,14 +72,26 @@ public class ConversationManager {
 
         listView.setCellFactory(v -> new ListCell<>() {
             @Override
-            protected void updateItem(Conversation item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) { setText(null); }
-                else {
-                    String title = item.getTitle() == null || item.getTitle().isBlank()
-                            ? "(untitled)" : item.getTitle();
-                    String ts = item.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-                    setText(title + "  —  " + ts + "  (" + item.getMessages().size() + " messages)");
+            protected void updateItem(SearchHit hit, boolean empty) {
+                super.updateItem(hit, empty);
+                if (empty || hit == null) {
+                    setText(null);
+                    setGraphic(null);
+                    return;
+                }
+                ConversationSummary item = hit.getSummary();
+                String title = item.getTitle() == null || item.getTitle().isBlank()
+                        ? "(untitled)" : item.getTitle();
+                String ts = item.getCreatedAt() == null
+                        ? "" : item.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                String line = title + "  —  " + ts + "  (" + item.getMessageCount() + " messages)"
+                        + (item.isArchived() ? "  [archived]" : "");
+                if (hit.getSnippet() == null) {
+                    setText(line);
+                    setGraphic(null);
+                } else {
+                    setText(null);
+                    setGraphic(new VBox(2, new Label(line), snippetFlow(hit)));
                 }
             }
         });
@@ -69,10 +105,11 @@ public class ConversationManager {
         HBox hbox = new HBox(tb);
         hbox.setAlignment(Pos.CENTER);
         hbox.setPadding(new Insets(10, 20, 0, 20));
+        status.setPadding(new Insets(6, 0, 0, 0));
 
         root.setTop(searchHbox);
         root.setCenter(listView);
-        root.setBottom(hbox);
+        root.setBottom(new VBox(status, hbox));
 
         Scene scene = new Scene(root, 640, 420);
         scene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
@@ -80,17 +117,21 @@ public class ConversationManager {
 
         listView.requestFocus();
 
+        // Files synced in or removed by other tools show up while the manager is open
+        repository.store().addChangeListener(onExternalChange);
+        stage.setOnHidden(e -> {
+            repository.store().removeChangeListener(onExternalChange);
+            if (search != null) search.cancel(false);
+        });
         refresh();
 
-        open.setOnAction(e -> {
-            chosen = listView.getSelectionModel().getSelectedItem();
-            if (chosen != null) stage.close();
-        });
+        open.setOnAction(e -> openSelected());
         delete.setOnAction(e -> {
-            Conversation sel = listView.getSelectionModel().getSelectedItem();
-            if (sel == null) {
+            SearchHit hit = listView.getSelectionModel().getSelectedItem();
+            if (hit == null) {
                 return;
             }
+            ConversationSummary sel = hit.getSummary();
 
             Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
             confirm.setTitle("Delete conversation");
@@ -103,12 +144,14 @@ public class ConversationManager {
 
             confirm.showAndWait().ifPresent(bt -> {
                 if (bt == deleteType) {
-                    try {
-                        repository.delete(sel);
-                        refresh();
-                    } catch (Exception ex) {
-                        new Alert(Alert.AlertType.ERROR, "Failed to delete: " + ex.getMessage(), ButtonType.OK).showAndWait();
-                    }
+                    repository.delete(sel).whenComplete((v, err) -> Platform.runLater(() -> {
+                        if (err == null) {
+                            refresh();
+                            return;
+                        }
+                        Throwable cause = err.getCause() != null ? err.getCause() : err;
+                        new Alert(Alert.AlertType.ERROR, "Failed to delete: " + cause.getMessage(), ButtonType.OK).showAndWait();
+                    }));
                 }
             });
         });
@@ -117,38 +160,134 @@ public class ConversationManager {
         searchField.textProperty().addListener((observable, oldValue, newValue) -> filterList(newValue));
     }
 
+    // Title matches show at once from memory; conversations ranked by their best message hit are
+    // appended when the background search for this query completes
     private void filterList(String query) {
-        try {
-            List<Conversation> allConversations = repository.listAll();
-            List<Conversation> filteredConversations = allConversations.stream()
-                    .filter(conversation -> conversation.getTitle() != null && conversation.getTitle().toLowerCase().contains(query.toLowerCase()))
-                    .toList();
-            listView.setItems(FXCollections.observableArrayList(filteredConversations));
-        } catch (Exception ex) {
-            ErrorHandler.alert("Filter Error", ex.getMessage(), Alert.AlertType.ERROR);
+        if (search != null) search.cancel(false);
+        search = null;
+        String q = query == null ? "" : query.trim().toLowerCase();
+        if (q.isEmpty()) {
+            listView.setItems(FXCollections.observableArrayList(plainRows(summaries)));
+            return;
+        }
+        Map<String, SearchHit> rows = new LinkedHashMap<>();
+        for (ConversationSummary s : summaries) {
+            if (s.getTitle() != null && s.getTitle().toLowerCase().contains(q)) {
+                rows.put(s.getFile(), new SearchHit(s, -1, 0, null, List.of()));
+            }
+        }
+        listView.setItems(FXCollections.observableArrayList(rows.values()));
+
+        CompletableFuture<List<SearchHit>> mine = repository.search(q, SEARCH_LIMIT, SEARCH_DELAY_MILLIS);
+        search = mine;
+        mine.whenComplete((hits, err) -> Platform.runLater(() -> {
+            if (search != mine) return;
+            search = null;
+            if (err != null) {
+                if (err instanceof CancellationException) return;
+                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                ErrorHandler.alert("Search Error", cause.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            for (SearchHit hit : hits) {
+                if (rows.putIfAbsent(hit.getSummary().getFile(), hit) == null) listView.getItems().add(hit);
+            }
+        }));
+    }
+
+    private static List<SearchHit> plainRows(List<ConversationSummary> items) {
+        return items.stream().map(s -> new SearchHit(s, -1, 0, null, List.of())).toList();
+    }
+
+    private static TextFlow snippetFlow(SearchHit hit) {
+        String text = hit.getSnippet();
+        TextFlow flow = new TextFlow();
+        Font bold = Font.font(Font.getDefault().getFamily(), FontWeight.BOLD, Font.getDefault().getSize());
+        int pos = 0;
+        for (int[] r : hit.getHighlights()) {
+            if (r[0] > pos) flow.getChildren().add(new Text(text.substring(pos, r[0])));
+            Text t = new Text(text.substring(r[0], r[1]));
+            t.setFont(bold);
+            flow.getChildren().add(t);
+            pos = r[1];
         }
+        if (pos < text.length()) flow.getChildren().add(new Text(text.substring(pos)));
+        flow.getStyleClass().add("search-snippet");
+        return flow;
     }
 
+    // Scans in the background; rows appear as they are read and are sorted once the scan completes
     private void refresh() {
-        try {
-            List<Conversation> items = repository.listAll();
-            listView.setItems(FXCollections.observableArrayList(items));
-        } catch (Exception ex) {
-            ErrorHandler.alert("Load Error", ex.getMessage(), Alert.AlertType.ERROR);
+        int gen = ++generation;
+        summaries = new ArrayList<>();
+        listView.setItems(FXCollections.observableArrayList());
+        status.setText("Loading conversations...");
+        List<ConversationSummary> pending = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        Runnable drain = () -> {
+            List<ConversationSummary> batch;
+            synchronized (pending) {
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            if (gen != generation) return;
+            summaries.addAll(batch);
+            if (searchField.getText() == null || searchField.getText().isBlank()) {
+                listView.getItems().addAll(plainRows(batch));
+            }
+        };
+        repository.listSummaries(new ConversationIndex.Listener() {
+            @Override
+            public void loaded(ConversationSummary summary) {
+                synchronized (pending) {
+                    pending.add(summary);
+                    if (pending.size() == 1) Platform.runLater(drain);
+                }
+            }
+
+            @Override
+            public void failed(String file, String reason) {
+                failed.add(file + ": " + reason);
+            }
+        }).whenComplete((all, err) -> Platform.runLater(() -> {
+            if (gen != generation) return;
+            if (err != null) {
+                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                status.setText("");
+                ErrorHandler.alert("Load Error", cause.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            summaries = all;
+            filterList(searchField.getText());
+            showStatus(all.size(), failed);
+        }));
+    }
+
+    private void showStatus(int count, List<String> failed) {
+        if (failed.isEmpty()) {
+            status.setText(count + " conversation(s)");
+            status.setTooltip(null);
+            return;
         }
+        status.setText(count + " conversation(s), " + failed.size() + " file(s) could not be read");
+        status.setTooltip(new Tooltip(String.join("\n", failed)));
     }
 
     // Method to handle double-click event
     private void handleDoubleClick(MouseEvent event) {
         if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
-            chosen = listView.getSelectionModel().getSelectedItem();
-            if (chosen != null) {
-                stage.close();
-            }
+            openSelected();
         }
     }
 
-    public Optional<Conversation> showAndWait() {
+    private void openSelected() {
+        SearchHit sel = listView.getSelectionModel().getSelectedItem();
+        if (sel == null) return;
+        chosen = sel.getSummary();
+        stage.close();
+    }
+
+    public Optional<ConversationSummary> showAndWait() {
         stage.showAndWait();
         return Optional.ofNullable(chosen);
     }
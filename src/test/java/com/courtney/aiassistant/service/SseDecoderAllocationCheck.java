@@ -0,0 +1,96 @@
+package com.courtney.aiassistant.service;
+
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Allocation check for SseDecoder, kept out of the app jar and run by hand after changing it:
+//   mvn test-compile, then
+//   java -cp target/classes:target/test-classes:<dependencies> com.courtney.aiassistant.service.SseDecoderAllocationCheck [rounds] [stream file]
+// The stream file is a captured response body (e.g. curl -N output); without one a built-in
+// recording is used. Decodes the stream over and over on one thread and prints the bytes that
+// thread allocated per event, once for the decoder alone and once with the delta pulled out as
+// ApiService does. The streams are built before counting starts, so only decoding is measured.
+public class SseDecoderAllocationCheck {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int DELTAS = 400;
+    // The names ApiService tells apart, in its order; 0 is the text delta
+    private static final List<String> EVENT_TYPES = List.of(
+            "response.output_text.delta",
+            "response.output_tool_calls",
+            "response.completed",
+            "response.error");
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        byte[] recorded = args.length > 1 ? Files.readAllBytes(Path.of(args[1])) : recordedStream();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("This JVM does not report per-thread allocation.");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        SseDecoder.Handler decodeOnly = (type, data, length) -> true;
+        SseDecoder.Handler withDelta = (type, data, length) -> {
+            if (type == 0) ApiService.JsonUtil.readStringField(data, length, "delta");
+            return true;
+        };
+        report("decoder", threads, recorded, rounds, decodeOnly);
+        report("decoder + delta", threads, recorded, rounds, withDelta);
+    }
+
+    private static void report(String name, com.sun.management.ThreadMXBean threads, byte[] recorded, int rounds,
+                               SseDecoder.Handler handler) throws IOException {
+        run(streams(recorded, WARMUP_ROUNDS), handler);
+        List<Buffer> measured = streams(recorded, rounds);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long events = run(measured, handler);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.printf("%-16s %,d events, %,d bytes, %.1f bytes/event%n",
+                name, events, allocated, (double) allocated / events);
+    }
+
+    // One decoder per stream, as ApiService uses it
+    private static long run(List<Buffer> streams, SseDecoder.Handler handler) throws IOException {
+        long[] events = new long[1];
+        for (Buffer stream : streams) {
+            new SseDecoder(EVENT_TYPES).decode(stream, (type, data, length) -> {
+                events[0]++;
+                return handler.onEvent(type, data, length);
+            });
+        }
+        return events[0];
+    }
+
+    private static List<Buffer> streams(byte[] recorded, int count) {
+        List<Buffer> streams = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) streams.add(new Buffer().write(recorded));
+        return streams;
+    }
+
+    // Shaped like a Responses API stream: created, many small text deltas, a keep-alive comment
+    // now and then, and completed
+    private static byte[] recordedStream() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("event: response.created\n")
+                .append("data: {\"type\":\"response.created\",\"response\":{\"id\":\"resp_0001\",\"status\":\"in_progress\"}}\n\n");
+        String[] words = {"The", " decoder", " reads", " each", " line", " straight", " off", " the", " buffer", ",", " \\\"quoted\\\"", "\\n"};
+        for (int i = 0; i < DELTAS; i++) {
+            if (i % 100 == 99) sb.append(": keep-alive\n\n");
+            sb.append("event: response.output_text.delta\r\n")
+                    .append("data: {\"type\":\"response.output_text.delta\",\"item_id\":\"msg_0001\",\"output_index\":0,")
+                    .append("\"content_index\":0,\"delta\":\"").append(words[i % words.length]).append("\"}\r\n\r\n");
+        }
+        sb.append("event: response.completed\n")
+                .append("data: {\"type\":\"response.completed\",\"response\":{\"id\":\"resp_0001\",\"status\":\"completed\"}}\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}